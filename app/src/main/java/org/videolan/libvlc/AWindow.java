@@ -27,6 +27,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.MainThread;
 import android.util.Log;
+import android.view.MotionEvent;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
@@ -35,6 +36,8 @@ import android.view.TextureView;
 import org.videolan.libvlc.util.AndroidUtil;
 
 import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 class AWindow implements IAWindowNativeHandler, IVLCVout {
@@ -44,6 +47,11 @@ class AWindow implements IAWindowNativeHandler, IVLCVout {
     private static final int ID_SUBTITLES = 1;
     private static final int ID_MAX = 2;
 
+    /* Mouse moves and window size changes are sent at most once per frame */
+    private static final long EVENTS_FLUSH_DELAY = 16; // ms
+    /* Maximum time the vout thread waits for the main thread to apply a buffers geometry */
+    private static final long BUFFERS_GEOMETRY_TIMEOUT = 200; // ms
+
     protected interface SurfaceCallback {
         @MainThread
         void onSurfacesCreated(AWindow vout);
@@ -202,8 +210,10 @@ class AWindow implements IAWindowNativeHandler, IVLCVout {
     /* synchronized Surfaces accessed by an other thread from JNI */
     private final Surface[] mSurfaces;
     private long mCallbackNativeHandle = 0;
+    /* Last events not sent to native yet, guarded by mNativeLock */
     private int mMouseAction = -1, mMouseButton = -1, mMouseX = -1, mMouseY = -1;
     private int mWindowWidth = -1, mWindowHeight = -1;
+    private boolean mEventsFlushPosted = false;
 
     protected AWindow(SurfaceCallback surfaceCallback) {
         mSurfaceCallback = surfaceCallback;
@@ -306,7 +316,7 @@ class AWindow implements IAWindowNativeHandler, IVLCVout {
             throw new IllegalStateException("already attached or video view not configured");
         mSurfacesState.set(SURFACE_STATE_ATTACHED);
         synchronized (mBuffersGeometryCond) {
-            mBuffersGeometryCond.configured = false;
+            mBuffersGeometryCond.applied = mBuffersGeometryCond.requested;
             mBuffersGeometryCond.abort = false;
         }
         for (int id = 0; id < ID_MAX; ++id) {
@@ -323,9 +333,16 @@ class AWindow implements IAWindowNativeHandler, IVLCVout {
             return;
         mSurfacesState.set(SURFACE_STATE_INIT);
         mHandler.removeCallbacksAndMessages(null);
+        synchronized (mNativeLock) {
+            flushEvents();
+        }
         synchronized (mBuffersGeometryCond) {
             mBuffersGeometryCond.abort = true;
+            /* the runnable was removed with the handler callbacks */
+            mBuffersGeometryCond.posted = false;
             mBuffersGeometryCond.notifyAll();
+            if (mBuffersGeometryCond.waits > 0)
+                Log.d(TAG, "setBuffersGeometry: " + getBuffersGeometryWaitStats());
         }
         for (int id = 0; id < ID_MAX; ++id) {
             final SurfaceHelper surfaceHelper = mSurfaceHelpers[id];
@@ -373,30 +390,72 @@ class AWindow implements IAWindowNativeHandler, IVLCVout {
         return mSurfacesState.get() == SURFACE_STATE_ATTACHED;
     }
 
+    /**
+     * Moves are coalesced, only the last one of a frame is sent. Other actions are sent right
+     * away, after the pending move.
+     */
     @Override
     public void sendMouseEvent(int action, int button, int x, int y) {
         synchronized (mNativeLock) {
-            if (mCallbackNativeHandle != 0)
-                nativeOnMouseEvent(mCallbackNativeHandle, action, button, x, y);
-            else {
-                mMouseAction = action;
-                mMouseButton = button;
-                mMouseX = x;
-                mMouseY = y;
-            }
+            if (action != MotionEvent.ACTION_MOVE)
+                flushMouseEvent();
+            mMouseAction = action;
+            mMouseButton = button;
+            mMouseX = x;
+            mMouseY = y;
+            if (action == MotionEvent.ACTION_MOVE)
+                postEventsFlush();
+            else
+                flushMouseEvent();
         }
     }
 
+    /**
+     * Size changes are coalesced, only the last one of a frame is sent.
+     */
     @Override
     public void setWindowSize(int width, int height) {
         synchronized (mNativeLock) {
-            if (mCallbackNativeHandle != 0)
-                nativeOnWindowSize(mCallbackNativeHandle, width, height);
-            else {
-                mWindowWidth = width;
-                mWindowHeight = height;
+            mWindowWidth = width;
+            mWindowHeight = height;
+            postEventsFlush();
+        }
+    }
+
+    /* Called with mNativeLock held */
+    private void postEventsFlush() {
+        if (mCallbackNativeHandle != 0 && !mEventsFlushPosted) {
+            mEventsFlushPosted = true;
+            mHandler.postDelayed(mEventsFlushRunnable, EVENTS_FLUSH_DELAY);
+        }
+    }
+
+    private final Runnable mEventsFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mNativeLock) {
+                flushEvents();
             }
         }
+    };
+
+    /* Called with mNativeLock held, events are kept until there is a native handle */
+    private void flushEvents() {
+        mEventsFlushPosted = false;
+        mHandler.removeCallbacks(mEventsFlushRunnable);
+        flushMouseEvent();
+        if (mCallbackNativeHandle != 0 && mWindowWidth != -1 && mWindowHeight != -1) {
+            nativeOnWindowSize(mCallbackNativeHandle, mWindowWidth, mWindowHeight);
+            mWindowWidth = mWindowHeight = -1;
+        }
+    }
+
+    /* Called with mNativeLock held */
+    private void flushMouseEvent() {
+        if (mCallbackNativeHandle != 0 && mMouseAction != -1) {
+            nativeOnMouseEvent(mCallbackNativeHandle, mMouseAction, mMouseButton, mMouseX, mMouseY);
+            mMouseAction = mMouseButton = mMouseX = mMouseY = -1;
+        }
     }
 
     @Override
@@ -405,12 +464,7 @@ class AWindow implements IAWindowNativeHandler, IVLCVout {
             if (mCallbackNativeHandle != 0 && nativeHandle != 0)
                 return false;
             mCallbackNativeHandle = nativeHandle;
-            if (mCallbackNativeHandle != 0) {
-                if (mMouseAction != -1)
-                    nativeOnMouseEvent(mCallbackNativeHandle, mMouseAction, mMouseButton, mMouseX, mMouseY);
-                if (mWindowWidth != -1 && mWindowHeight != -1)
-                    nativeOnWindowSize(mCallbackNativeHandle, mWindowWidth, mWindowHeight);
-            }
+            flushEvents();
             mMouseAction = mMouseButton = mMouseX = mMouseY = -1;
             mWindowWidth = mWindowHeight = -1;
         }
@@ -440,11 +494,66 @@ class AWindow implements IAWindowNativeHandler, IVLCVout {
     }
 
     private static class BuffersGeometryCond {
-        private boolean configured = false;
         private boolean abort = false;
+        /* Last requested geometry, applied on the main thread */
+        private Surface surface;
+        private int width, height, format;
+        private int requested = 0;
+        private int applied = 0;
+        private boolean posted = false;
+        /* Time spent by the vout thread waiting for the main thread */
+        private int waits = 0, timeouts = 0;
+        private long totalWait = 0, maxWait = 0;
     }
     private final BuffersGeometryCond mBuffersGeometryCond = new BuffersGeometryCond();
 
+    private SurfaceHelper getSurfaceHelper(Surface surface) {
+        for (int id = 0; id < ID_MAX; ++id) {
+            final SurfaceHelper surfaceHelper = mSurfaceHelpers[id];
+            if (surfaceHelper != null && surfaceHelper.getSurface() == surface)
+                return surfaceHelper;
+        }
+        return null;
+    }
+
+    private final Runnable mBuffersGeometryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final Surface surface;
+            final int width, height, format, request;
+            synchronized (mBuffersGeometryCond) {
+                mBuffersGeometryCond.posted = false;
+                surface = mBuffersGeometryCond.surface;
+                width = mBuffersGeometryCond.width;
+                height = mBuffersGeometryCond.height;
+                format = mBuffersGeometryCond.format;
+                request = mBuffersGeometryCond.requested;
+            }
+
+            final SurfaceHelper surfaceHelper = getSurfaceHelper(surface);
+            final SurfaceHolder surfaceHolder = surfaceHelper != null ? surfaceHelper.getSurfaceHolder() : null;
+
+            if (surfaceHolder != null) {
+                if (surfaceHolder.getSurface().isValid()) {
+                    if (format != 0)
+                        surfaceHolder.setFormat(format);
+                    surfaceHolder.setFixedSize(width, height);
+                }
+            }
+
+            synchronized (mBuffersGeometryCond) {
+                if (request > mBuffersGeometryCond.applied)
+                    mBuffersGeometryCond.applied = request;
+                mBuffersGeometryCond.notifyAll();
+            }
+        }
+    };
+
+    /**
+     * Called from the vout thread. The geometry is applied on the main thread, this waits for
+     * it at most BUFFERS_GEOMETRY_TIMEOUT ms: if the main thread is busy, the vout goes on and
+     * the geometry is applied later. Requests not applied yet are replaced by the new ones.
+     */
     @Override
     public boolean setBuffersGeometry(final Surface surface, final int width, final int height, final int format) {
         if (AndroidUtil.isICSOrLater())
@@ -453,46 +562,41 @@ class AWindow implements IAWindowNativeHandler, IVLCVout {
             return false;
         Log.d(TAG, "configureSurface: " + width + "x" + height);
 
+        final int request;
         synchronized (mBuffersGeometryCond) {
-            if (mBuffersGeometryCond.configured || mBuffersGeometryCond.abort)
+            if (mBuffersGeometryCond.abort)
                 return false;
-        }
-
-        mHandler.post(new Runnable() {
-            private SurfaceHelper getSurfaceHelper(Surface surface) {
-                for (int id = 0; id < ID_MAX; ++id) {
-                    final SurfaceHelper surfaceHelper = mSurfaceHelpers[id];
-                    if (surfaceHelper != null && surfaceHelper.getSurface() == surface)
-                        return surfaceHelper;
-                }
-                return null;
-            }
-
-            @Override
-            public void run() {
-                final SurfaceHelper surfaceHelper = getSurfaceHelper(surface);
-                final SurfaceHolder surfaceHolder = surfaceHelper != null ? surfaceHelper.getSurfaceHolder() : null;
-
-                if (surfaceHolder != null) {
-                    if (surfaceHolder.getSurface().isValid()) {
-                        if (format != 0)
-                            surfaceHolder.setFormat(format);
-                        surfaceHolder.setFixedSize(width, height);
-                    }
-                }
-
-                synchronized (mBuffersGeometryCond) {
-                    mBuffersGeometryCond.configured = true;
-                    mBuffersGeometryCond.notifyAll();
-                }
+            mBuffersGeometryCond.surface = surface;
+            mBuffersGeometryCond.width = width;
+            mBuffersGeometryCond.height = height;
+            mBuffersGeometryCond.format = format;
+            request = ++mBuffersGeometryCond.requested;
+            if (!mBuffersGeometryCond.posted) {
+                mBuffersGeometryCond.posted = true;
+                mHandler.post(mBuffersGeometryRunnable);
             }
-        });
+        }
 
         try {
             synchronized (mBuffersGeometryCond) {
-                while (!mBuffersGeometryCond.configured && !mBuffersGeometryCond.abort)
-                    mBuffersGeometryCond.wait();
-                mBuffersGeometryCond.configured = false;
+                final long start = System.nanoTime();
+                final long deadline = start + TimeUnit.MILLISECONDS.toNanos(BUFFERS_GEOMETRY_TIMEOUT);
+                long now = start;
+                while (mBuffersGeometryCond.applied < request && !mBuffersGeometryCond.abort && now < deadline) {
+                    TimeUnit.NANOSECONDS.timedWait(mBuffersGeometryCond, deadline - now);
+                    now = System.nanoTime();
+                }
+                final long wait = now - start;
+                ++mBuffersGeometryCond.waits;
+                mBuffersGeometryCond.totalWait += wait;
+                if (wait > mBuffersGeometryCond.maxWait)
+                    mBuffersGeometryCond.maxWait = wait;
+                if (mBuffersGeometryCond.abort)
+                    return false;
+                if (mBuffersGeometryCond.applied < request) {
+                    ++mBuffersGeometryCond.timeouts;
+                    Log.w(TAG, "setBuffersGeometry: main thread busy, not waiting anymore");
+                }
             }
         } catch (InterruptedException e) {
             return false;
@@ -500,6 +604,19 @@ class AWindow implements IAWindowNativeHandler, IVLCVout {
         return true;
     }
 
+    /**
+     * @return the number of setBuffersGeometry calls, the time they waited for the main thread
+     * and how many gave up waiting
+     */
+    public String getBuffersGeometryWaitStats() {
+        synchronized (mBuffersGeometryCond) {
+            final BuffersGeometryCond cond = mBuffersGeometryCond;
+            return String.format(Locale.US, "%d calls, %.2f ms avg wait, %.2f ms max wait, %d timeouts",
+                    cond.waits, cond.waits > 0 ? cond.totalWait / 1e6 / cond.waits : 0.0,
+                    cond.maxWait / 1e6, cond.timeouts);
+        }
+    }
+
     @Override
     public void addCallback(IVLCVout.Callback callback) {
         if (!mIVLCVoutCallbacks.contains(callback))
@@ -25,6 +25,9 @@ package org.videolan.libvlc;
 @SuppressWarnings("unused")
 public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
 
+    /**
+     * TimeChanged and PositionChanged events are reused once the listener returns.
+     */
     public static class Event extends VLCEvent {
         //public static final int MediaChanged        = 0x100;
         //public static final int NothingSpecial      = 0x101;
@@ -50,8 +53,8 @@ public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
         public static final int ESDeleted           = 0x115;
         //public static final int ESSelected          = 0x116;
 
-        private final long arg1;
-        private final float arg2;
+        private long arg1;
+        private float arg2;
         protected Event(int type) {
             super(type);
             this.arg1 = 0;
@@ -317,6 +320,10 @@ public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
     private boolean mPlaying = false;
     private boolean mPlayRequested = false;
     private int mVoutCount = 0;
+    private static final int EVENT_POOL_SIZE = 4;
+    /* Guarded by this */
+    private final EventPool mTimeChangedPool = new EventPool(Event.TimeChanged);
+    private final EventPool mPositionChangedPool = new EventPool(Event.PositionChanged);
     private boolean mAudioReset = false;
     private String mAudioOutput = null;
     private String mAudioOutputDevice = null;
@@ -383,6 +390,13 @@ public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
         nativeNewFromMedia(mMedia, mWindow);
     }
 
+    /**
+     * Create a MediaPlayer without native instance, for the JVM tests: it only handles the
+     * events sent to dispatchEventFromNative(), any native call fails.
+     */
+    MediaPlayer() {
+    }
+
     /**
      * Get the IVLCVout helper.
      */
@@ -805,9 +819,9 @@ public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
             case Event.Paused:
                 return new Event(eventType);
             case Event.TimeChanged:
-                return new Event(eventType, arg1);
+                return mTimeChangedPool.obtain(arg1, 0);
             case Event.PositionChanged:
-                return new Event(eventType, arg2);
+                return mPositionChangedPool.obtain(0, arg2);
             case Event.Vout:
                 mVoutCount = (int) arg1;
                 notify();
@@ -819,6 +833,45 @@ public class MediaPlayer extends VLCObject<MediaPlayer.Event> {
         return null;
     }
 
+    /**
+     * Free events of a type, to dispatch the TimeChanged and PositionChanged events, sent
+     * several times per second, without allocating.
+     */
+    private static class EventPool {
+        private final int mType;
+        private final Event[] mEvents = new Event[EVENT_POOL_SIZE];
+        private int mSize = 0;
+
+        private EventPool(int type) {
+            mType = type;
+        }
+
+        private Event obtain(long arg1, float arg2) {
+            final Event event = mSize > 0 ? mEvents[--mSize] : new Event(mType);
+            mEvents[mSize] = null;
+            event.arg1 = arg1;
+            event.arg2 = arg2;
+            return event;
+        }
+
+        private void recycle(Event event) {
+            if (mSize < mEvents.length)
+                mEvents[mSize++] = event;
+        }
+    }
+
+    @Override
+    protected synchronized void onEventRecycled(Event event) {
+        switch (event.type) {
+            case Event.TimeChanged:
+                mTimeChangedPool.recycle(event);
+                break;
+            case Event.PositionChanged:
+                mPositionChangedPool.recycle(event);
+                break;
+        }
+    }
+
     @Override
     protected void onReleaseNative() {
         if (mMedia != null)
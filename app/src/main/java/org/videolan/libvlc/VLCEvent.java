@@ -29,6 +29,9 @@ abstract class VLCEvent {
     /**
      * Listener for libvlc events
      *
+     * Events may be reused once onEvent() returns: listeners must copy the values they need
+     * instead of keeping the event.
+     *
      * @see VLCEvent
      */
     public interface Listener<T extends VLCEvent> {
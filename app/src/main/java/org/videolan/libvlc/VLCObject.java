@@ -29,6 +29,10 @@ abstract class VLCObject<T extends VLCEvent> {
     private VLCEvent.Listener<T> mEventListener = null;
     private Handler mHandler = null;
     private int mNativeRefCount = 1;
+    /* Recycled EventRunnables, guarded by this */
+    private static final int MAX_FREE_RUNNABLES = 8;
+    private EventRunnable mFreeRunnables = null;
+    private int mFreeRunnableCount = 0;
 
     /**
      * Returns true if native object is released
@@ -101,6 +105,13 @@ abstract class VLCObject<T extends VLCEvent> {
      */
     protected abstract T onEventNative(int eventType, long arg1, float arg2);
 
+    /**
+     * Called once an event returned by {@link #onEventNative(int, long, float)} has been
+     * dispatched to the listener, or dropped. The event can be reused from then on.
+     */
+    protected void onEventRecycled(T event) {
+    }
+
     /**
      * Called when native object is released (refcount is 0).
      *
@@ -115,23 +126,60 @@ abstract class VLCObject<T extends VLCEvent> {
         if (isReleased())
             return;
         final T event = onEventNative(eventType, arg1, arg2);
+        if (event == null)
+            return;
 
-        class EventRunnable implements Runnable {
-            private final VLCEvent.Listener<T> listener;
-            private final T event;
+        if (mEventListener != null && mHandler != null)
+            postEvent(obtainRunnable(mEventListener, event));
+        else
+            onEventRecycled(event);
+    }
 
-            private EventRunnable(VLCEvent.Listener<T> listener, T event) {
-                this.listener = listener;
-                this.event = event;
-            }
-            @Override
-            public void run() {
-                listener.onEvent(event);
-            }
+    /**
+     * Post an event runnable to the main thread.
+     * Overridden by the JVM tests, which have no main looper, to run the events themselves.
+     */
+    void postEvent(Runnable runnable) {
+        mHandler.post(runnable);
+    }
+
+    /* Runnables are recycled after running. The ones dropped by setEventListener() are not,
+     * they are collected. */
+    private class EventRunnable implements Runnable {
+        private VLCEvent.Listener<T> listener;
+        private T event;
+        private EventRunnable next;
+
+        @Override
+        public void run() {
+            listener.onEvent(event);
+            recycleRunnable(this);
         }
+    }
 
-        if (event != null && mEventListener != null && mHandler != null)
-            mHandler.post(new EventRunnable(mEventListener, event));
+    private synchronized EventRunnable obtainRunnable(VLCEvent.Listener<T> listener, T event) {
+        EventRunnable runnable = mFreeRunnables;
+        if (runnable != null) {
+            mFreeRunnables = runnable.next;
+            runnable.next = null;
+            --mFreeRunnableCount;
+        } else
+            runnable = new EventRunnable();
+        runnable.listener = listener;
+        runnable.event = event;
+        return runnable;
+    }
+
+    private synchronized void recycleRunnable(EventRunnable runnable) {
+        final T event = runnable.event;
+        runnable.listener = null;
+        runnable.event = null;
+        if (mFreeRunnableCount < MAX_FREE_RUNNABLES) {
+            runnable.next = mFreeRunnables;
+            mFreeRunnables = runnable;
+            ++mFreeRunnableCount;
+        }
+        onEventRecycled(event);
     }
     private native void nativeDetachEvents();
 
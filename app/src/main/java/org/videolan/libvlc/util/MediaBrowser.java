@@ -23,6 +23,7 @@ package org.videolan.libvlc.util;
 import android.net.Uri;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 //import org.videolan.BuildConfig;
 import org.videolan.libvlc.LibVLC;
@@ -44,13 +45,16 @@ public class MediaBrowser {
     private final LibVLC mLibVlc;
     private final ArrayList<MediaDiscoverer> mMediaDiscoverers = new ArrayList<MediaDiscoverer>();
     private final ArrayList<Media> mDiscovererMediaArray = new ArrayList<Media>();
+    /* Discovered medias by uri, to drop the ones found by several discoverers */
+    private final HashMap<String, Media> mDiscovererMediaIndex = new HashMap<String, Media>();
     private MediaList mBrowserMediaList;
     private Media mMedia;
     private EventListener mEventListener;
     private boolean mAlive;
 
     private static final String IGNORE_LIST_OPTION =  ":ignore-filetypes=";
-    private String mIgnoreList = "db,nfo,ini,jpg,jpeg,ljpg,gif,png,pgm,pgmyuv,pbm,pam,tga,bmp,pnm,xpm,xcf,pcx,tif,tiff,lbm,sfv,txt,sub,idx,srt,cue,ssa";
+    public static final String DEFAULT_IGNORE_LIST = "db,nfo,ini,jpg,jpeg,ljpg,gif,png,pgm,pgmyuv,pbm,pam,tga,bmp,pnm,xpm,xcf,pcx,tif,tiff,lbm,sfv,txt,sub,idx,srt,cue,ssa";
+    private String mIgnoreList = DEFAULT_IGNORE_LIST;
 
     /**
      * Listener called when medias are added or removed.
@@ -88,6 +92,7 @@ public class MediaBrowser {
             md.release();
         mMediaDiscoverers.clear();
         mDiscovererMediaArray.clear();
+        mDiscovererMediaIndex.clear();
         if (mMedia != null) {
             mMedia.release();
             mMedia = null;
@@ -253,14 +258,9 @@ public class MediaBrowser {
             case MediaList.Event.ItemAdded:
                 synchronized (MediaBrowser.this) {
                     /* one item can be found by severals discoverers */
-                    boolean found = false;
-                    for (Media media : mDiscovererMediaArray) {
-                        if (media.getUri().equals(mlEvent.media.getUri())) {
-                            found = true;
-                            break;
-                        }
-                    }
-                    if (!found) {
+                    final String key = mlEvent.media.getUri().toString();
+                    if (!mDiscovererMediaIndex.containsKey(key)) {
+                        mDiscovererMediaIndex.put(key, mlEvent.media);
                         mDiscovererMediaArray.add(mlEvent.media);
                         index = mDiscovererMediaArray.size() - 1;
                     }
@@ -270,9 +270,13 @@ public class MediaBrowser {
                 break;
             case MediaList.Event.ItemDeleted:
                 synchronized (MediaBrowser.this) {
-                    index = mDiscovererMediaArray.indexOf(mlEvent.media);
-                    if (index != -1)
+                    final String key = mlEvent.media.getUri().toString();
+                    /* only the instance kept from the first discoverer is listed */
+                    if (mDiscovererMediaIndex.get(key) == mlEvent.media) {
+                        mDiscovererMediaIndex.remove(key);
+                        index = mDiscovererMediaArray.indexOf(mlEvent.media);
                         mDiscovererMediaArray.remove(index);
+                    }
                 }
                 if (index != -1)
                     mEventListener.onMediaRemoved(index, mlEvent.media);
@@ -30,7 +30,18 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -38,13 +49,17 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
 import org.videolan.libvlc.util.AndroidUtil;
+import org.videolan.vlc.util.Trace;
 
 public class MediaDatabase {
     public final static String TAG = "VLC/MediaDatabase";
@@ -52,8 +67,37 @@ public class MediaDatabase {
     private static MediaDatabase instance;
 
     private SQLiteDatabase mDb;
+    /* Serializes the writes. Reads take no lock: with the write-ahead log they run
+     * concurrently with each other and with the writer. */
+    private final ReentrantLock mWriteLock = new ReentrantLock();
+    /* call site -> { count, total wait, max wait } in ns, guarded by itself */
+    private final HashMap<String, long[]> mLockWaits = new HashMap<String, long[]>();
+    /* Outermost write in progress, guarded by mWriteLock */
+    private String mWriteSite;
+    private long mWriteStart;
+    private static final long LOCK_WAIT_WARNING_MS = 100;
+
+    /* Message sent to the resume states handlers once the cache is loaded */
+    public static final int RESUME_STATES_LOADED = 101;
+
+    /* Write-behind queue of the playback state updates: location -> values to update,
+     * guarded by itself */
+    private final HashMap<String, ContentValues> mPendingUpdates = new HashMap<String, ContentValues>();
+    private boolean mFlushScheduled = false;
+    /* Write-through cache of the playback state of every media: location -> state, loaded
+     * in the background on creation, guarded by mResumeStatesLock. The lock is never held
+     * during a query: the changes done while loading are logged, and applied to the loaded
+     * map when it is published. */
+    private volatile HashMap<String, ResumeState> mResumeStates = null;
+    private ArrayList<ResumeStateChange> mResumeStateChanges = new ArrayList<ResumeStateChange>();
+    private final ArrayList<Handler> mResumeStatesHandlers = new ArrayList<Handler>();
+    private final Object mResumeStatesLock = new Object();
+    private final ScheduledExecutorService mUpdateExecutor = Executors.newSingleThreadScheduledExecutor();
+    private static final long UPDATE_FLUSH_DELAY = 5000; // ms
+    /* incremented on every change of the playlist tables */
+    private final AtomicInteger mPlaylistsVersion = new AtomicInteger();
     private static final String DB_NAME = "vlc_database";
-    private static final int DB_VERSION = 21;
+    private static final int DB_VERSION = 23;
     private static final int CHUNK_SIZE = 50;
 
     private static final String DIR_TABLE_NAME = "directories_table";
@@ -80,6 +124,9 @@ public class MediaDatabase {
     private static final String MEDIA_DISCNUMBER = "disc_number";
     private static final String MEDIA_LAST_MODIFIED = "last_modified";
 
+    /* Default number of results of the search suggestions */
+    public static final int SEARCH_SUGGESTIONS_LIMIT = 20;
+
     private static final String PLAYLIST_TABLE_NAME = "playlist_table";
     private static final String PLAYLIST_NAME = "name";
 
@@ -88,6 +135,10 @@ public class MediaDatabase {
     private static final String PLAYLIST_MEDIA_PLAYLISTNAME = "playlist_name";
     private static final String PLAYLIST_MEDIA_MEDIALOCATION = "media_location";
     private static final String PLAYLIST_MEDIA_ORDER = "playlist_order";
+    private static final String PLAYLIST_MEDIA_INDEX_NAME = "playlist_media_order_index";
+    /* Gap between the order keys of two consecutive playlist items, so that an item
+     * can be inserted or moved by updating a single row */
+    private static final long PLAYLIST_ORDER_STEP = 1 << 16;
 
     private static final String SEARCHHISTORY_TABLE_NAME = "searchhistory_table";
     private static final String SEARCHHISTORY_DATE = "date";
@@ -118,6 +169,67 @@ public class MediaDatabase {
         // create or open database
         DatabaseHelper helper = new DatabaseHelper(context);
         this.mDb = helper.getWritableDatabase();
+        // Per connection setting, needed for the FTS delete trigger on REPLACE
+        mDb.execSQL("PRAGMA recursive_triggers='ON'");
+        enableWriteAheadLogging();
+        preloadResumeStates();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void enableWriteAheadLogging() {
+        // Before Honeycomb, SQLiteDatabase serializes all the accesses anyway
+        if (AndroidUtil.isHoneycombOrLater() && !mDb.enableWriteAheadLogging())
+            Log.w(TAG, "Write-ahead logging not available, reads will wait for the writes");
+    }
+
+    /**
+     * Take the write lock, accounting the time spent waiting for it to site, a constant
+     * trace section name.
+     * Every write, and every read needing to be consistent with a write, is done with this lock.
+     */
+    private void lockWrite(String site) {
+        final long start = System.nanoTime();
+        mWriteLock.lock();
+        final long wait = System.nanoTime() - start;
+        if (mWriteLock.getHoldCount() == 1) {
+            mWriteSite = site;
+            mWriteStart = start;
+        }
+        synchronized (mLockWaits) {
+            long[] stats = mLockWaits.get(site);
+            if (stats == null) {
+                stats = new long[3];
+                mLockWaits.put(site, stats);
+            }
+            ++stats[0];
+            stats[1] += wait;
+            if (wait > stats[2])
+                stats[2] = wait;
+        }
+        if (TimeUnit.NANOSECONDS.toMillis(wait) >= LOCK_WAIT_WARNING_MS)
+            Log.w(TAG, site + " waited " + TimeUnit.NANOSECONDS.toMillis(wait) + " ms for the write lock");
+    }
+
+    private void unlockWrite() {
+        if (mWriteLock.getHoldCount() == 1)
+            Trace.end(mWriteSite, mWriteStart);
+        mWriteLock.unlock();
+    }
+
+    /**
+     * @return one line per call site with the number of write lock acquisitions and the
+     * total, average and max time spent waiting for it
+     */
+    public String getLockWaitStats() {
+        final StringBuilder sb = new StringBuilder();
+        synchronized (mLockWaits) {
+            for (Map.Entry<String, long[]> entry : mLockWaits.entrySet()) {
+                final long[] stats = entry.getValue();
+                sb.append(String.format(Locale.US, "%s: %d locks, %.1f ms total, %.2f ms avg, %.1f ms max\n",
+                        entry.getKey(), stats[0], stats[1] / 1e6, stats[1] / 1e6 / stats[0], stats[2] / 1e6));
+            }
+        }
+        return sb.toString();
     }
 
     public synchronized static MediaDatabase getInstance() {
@@ -200,9 +312,10 @@ public class MediaDatabase {
                     + ");";
             db.execSQL(query);
             db.execSQL("PRAGMA recursive_triggers='ON'"); //Needed for delete trigger
+            /* Only the user-visible fields are indexed, the FTS rows are linked to the
+             * media_table rows by their rowid. */
             query = "CREATE VIRTUAL TABLE "
-                    + MEDIA_VIRTUAL_TABLE_NAME + " USING FTS3 ("
-                    + MEDIA_LOCATION + ", "
+                    + MEDIA_VIRTUAL_TABLE_NAME + " USING " + (AndroidUtil.isHoneycombOrLater() ? "FTS4" : "FTS3") + " ("
                     + MEDIA_TITLE + ", "
                     + MEDIA_ARTIST + ", "
                     + MEDIA_GENRE + ", "
@@ -212,14 +325,21 @@ public class MediaDatabase {
             db.execSQL(query);
             query = " CREATE TRIGGER media_insert_trigger AFTER INSERT ON "+
                     MEDIA_TABLE_NAME+ " BEGIN "+
-                        "INSERT INTO "+MEDIA_VIRTUAL_TABLE_NAME+" ("+MEDIA_LOCATION+", "+MEDIA_TITLE+
+                        "INSERT INTO "+MEDIA_VIRTUAL_TABLE_NAME+" (docid, "+MEDIA_TITLE+
                         ", "+MEDIA_ARTIST+", "+MEDIA_GENRE+", "+MEDIA_ALBUM+", "+MEDIA_ALBUMARTIST+" )"+
-                        " VALUES (new."+MEDIA_LOCATION+", new."+MEDIA_TITLE+", new."+MEDIA_ARTIST+
+                        " VALUES (new.rowid, new."+MEDIA_TITLE+", new."+MEDIA_ARTIST+
                         ", new."+MEDIA_GENRE+", new."+MEDIA_ALBUM+", new."+MEDIA_ALBUMARTIST+
                         "); END;";
             db.execSQL(query);
+            query = " CREATE TRIGGER media_update_trigger AFTER UPDATE OF "+MEDIA_TITLE+", "+MEDIA_ARTIST+", "+
+                    MEDIA_GENRE+", "+MEDIA_ALBUM+", "+MEDIA_ALBUMARTIST+" ON "+MEDIA_TABLE_NAME+ " BEGIN "+
+                        "UPDATE "+MEDIA_VIRTUAL_TABLE_NAME+" SET "+MEDIA_TITLE+" = new."+MEDIA_TITLE+
+                        ", "+MEDIA_ARTIST+" = new."+MEDIA_ARTIST+", "+MEDIA_GENRE+" = new."+MEDIA_GENRE+
+                        ", "+MEDIA_ALBUM+" = new."+MEDIA_ALBUM+", "+MEDIA_ALBUMARTIST+" = new."+MEDIA_ALBUMARTIST+
+                        " WHERE docid = new.rowid; END;";
+            db.execSQL(query);
             query = " CREATE TRIGGER media_delete_trigger AFTER DELETE ON "+MEDIA_TABLE_NAME+ " BEGIN "+
-                        "DELETE FROM "+MEDIA_VIRTUAL_TABLE_NAME+" WHERE "+MEDIA_LOCATION+" = old."+MEDIA_LOCATION+";"+
+                        "DELETE FROM "+MEDIA_VIRTUAL_TABLE_NAME+" WHERE docid = old.rowid;"+
                         " END;";
             db.execSQL(query);
         }
@@ -239,6 +359,13 @@ public class MediaDatabase {
                     PLAYLIST_MEDIA_ORDER + " INTEGER NOT NULL);";
 
             db.execSQL(createPlaylistMediaTableQuery);
+            createPlaylistMediaIndexQuery(db);
+        }
+
+        private void createPlaylistMediaIndexQuery(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + PLAYLIST_MEDIA_INDEX_NAME + " ON " +
+                    PLAYLIST_MEDIA_TABLE_NAME + " (" +
+                    PLAYLIST_MEDIA_PLAYLISTNAME + ", " + PLAYLIST_MEDIA_ORDER + ");");
         }
 
         private void createMRLTableQuery(SQLiteDatabase db) {
@@ -343,6 +470,12 @@ public class MediaDatabase {
                     dropNetworkFavTableQuery(db);
                     createNetworkFavTableQuery(db);
                     break;
+                case 22:
+                    // Spaced playlist order keys
+                    createPlaylistMediaIndexQuery(db);
+                    db.execSQL("UPDATE " + PLAYLIST_MEDIA_TABLE_NAME + " SET " +
+                            PLAYLIST_MEDIA_ORDER + " = " + PLAYLIST_MEDIA_ORDER + " * " + PLAYLIST_ORDER_STEP + ";");
+                    break;
                 default:
                     break;
                 }
@@ -381,15 +514,21 @@ public class MediaDatabase {
         if(name.length() >= 200)
             return false;
 
-        // Check if already exists
-        if(playlistExists(name))
-            return false;
+        lockWrite("MediaDatabase.playlistAdd");
+        try {
+            // Check if already exists
+            if(playlistExists(name))
+                return false;
 
-        // Create new playlist
-        ContentValues values = new ContentValues();
-        values.put(PLAYLIST_NAME, name);
-        long res = mDb.insert(PLAYLIST_TABLE_NAME, "NULL", values);
-        return res != -1;
+            // Create new playlist
+            ContentValues values = new ContentValues();
+            values.put(PLAYLIST_NAME, name);
+            long res = mDb.insert(PLAYLIST_TABLE_NAME, "NULL", values);
+            mPlaylistsVersion.incrementAndGet();
+            return res != -1;
+        } finally {
+            unlockWrite();
+        }
     }
 
     /**
@@ -398,10 +537,144 @@ public class MediaDatabase {
      * @param name Unique name of the playlist
      */
     public void playlistDelete(String name) {
-        mDb.delete(PLAYLIST_TABLE_NAME, PLAYLIST_NAME + "=?",
-                new String[]{ name });
-        mDb.delete(PLAYLIST_MEDIA_TABLE_NAME, PLAYLIST_MEDIA_PLAYLISTNAME
-                + "=?", new String[] { name });
+        lockWrite("MediaDatabase.playlistDelete");
+        mDb.beginTransaction();
+        try {
+            mDb.delete(PLAYLIST_TABLE_NAME, PLAYLIST_NAME + "=?",
+                    new String[]{ name });
+            mDb.delete(PLAYLIST_MEDIA_TABLE_NAME, PLAYLIST_MEDIA_PLAYLISTNAME
+                    + "=?", new String[] { name });
+            mPlaylistsVersion.incrementAndGet();
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            unlockWrite();
+        }
+    }
+
+    /**
+     * Create or replace a playlist with the given media, in a single transaction.
+     *
+     * @param name Unique name of the playlist
+     * @param medias Media of the playlist, in order
+     * @return False if invalid name, true otherwise
+     */
+    public boolean playlistSave(String name, List<MediaWrapper> medias) {
+        if(name.length() >= 200)
+            return false;
+
+        lockWrite("MediaDatabase.playlistSave");
+        mDb.beginTransaction();
+        try {
+            mDb.delete(PLAYLIST_MEDIA_TABLE_NAME, PLAYLIST_MEDIA_PLAYLISTNAME
+                    + "=?", new String[] { name });
+            ContentValues values = new ContentValues();
+            values.put(PLAYLIST_NAME, name);
+            mDb.replace(PLAYLIST_TABLE_NAME, "NULL", values);
+
+            final SQLiteStatement insert = mDb.compileStatement("INSERT INTO " +
+                    PLAYLIST_MEDIA_TABLE_NAME + " (" + PLAYLIST_MEDIA_PLAYLISTNAME + ", " +
+                    PLAYLIST_MEDIA_MEDIALOCATION + ", " + PLAYLIST_MEDIA_ORDER + ") VALUES (?, ?, ?)");
+            try {
+                for (int i = 0; i < medias.size(); ++i) {
+                    insert.bindString(1, name);
+                    insert.bindString(2, medias.get(i).getLocation());
+                    insert.bindLong(3, i * PLAYLIST_ORDER_STEP);
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+            mPlaylistsVersion.incrementAndGet();
+            mDb.setTransactionSuccessful();
+            return true;
+        } finally {
+            mDb.endTransaction();
+            unlockWrite();
+        }
+    }
+
+    /**
+     * @return a number that changes every time a playlist is modified
+     */
+    public int getPlaylistsVersion() {
+        return mPlaylistsVersion.get();
+    }
+
+    /**
+     * Get all the playlists with their media, in a single query.
+     * Media that are not in the media table only have their location set.
+     *
+     * @return playlist name -> media of the playlist in order
+     */
+    public HashMap<String, ArrayList<MediaWrapper>> getPlaylistsMedias() {
+        final HashMap<String, ArrayList<MediaWrapper>> playlists = new HashMap<String, ArrayList<MediaWrapper>>();
+        final Cursor cursor = mDb.rawQuery("SELECT " +
+                "p." + PLAYLIST_NAME + ", " + //0 string
+                "pm." + PLAYLIST_MEDIA_MEDIALOCATION + ", " + //1 string
+                "m." + MEDIA_LOCATION + ", " + //2 string, null if not in media table
+                "m." + MEDIA_TIME + ", " + //3 long
+                "m." + MEDIA_LENGTH + ", " + //4 long
+                "m." + MEDIA_TYPE + ", " + //5 int
+                "m." + MEDIA_TITLE + ", " + //6 string
+                "m." + MEDIA_ARTIST + ", " + //7 string
+                "m." + MEDIA_GENRE + ", " + //8 string
+                "m." + MEDIA_ALBUM + ", " + //9 string
+                "m." + MEDIA_ALBUMARTIST + ", " + //10 string
+                "m." + MEDIA_WIDTH + ", " + //11 int
+                "m." + MEDIA_HEIGHT + ", " + //12 int
+                "m." + MEDIA_ARTWORKURL + ", " + //13 string
+                "m." + MEDIA_AUDIOTRACK + ", " + //14 int
+                "m." + MEDIA_SPUTRACK + ", " + //15 int
+                "m." + MEDIA_TRACKNUMBER + ", " + //16 int
+                "m." + MEDIA_DISCNUMBER + ", " + //17 int
+                "m." + MEDIA_LAST_MODIFIED + //18 long
+                " FROM " + PLAYLIST_TABLE_NAME + " p" +
+                " LEFT JOIN " + PLAYLIST_MEDIA_TABLE_NAME + " pm ON pm." + PLAYLIST_MEDIA_PLAYLISTNAME + " = p." + PLAYLIST_NAME +
+                " LEFT JOIN " + MEDIA_TABLE_NAME + " m ON m." + MEDIA_LOCATION + " = pm." + PLAYLIST_MEDIA_MEDIALOCATION +
+                " ORDER BY p." + PLAYLIST_NAME + ", pm." + PLAYLIST_MEDIA_ORDER, null);
+        if (cursor == null)
+            return playlists;
+        try {
+            ArrayList<MediaWrapper> medias = null;
+            String currentName = null;
+            while (cursor.moveToNext()) {
+                final String name = cursor.getString(0);
+                if (!name.equals(currentName)) {
+                    currentName = name;
+                    medias = new ArrayList<MediaWrapper>();
+                    playlists.put(name, medias);
+                }
+                final String location = cursor.getString(1);
+                if (location == null) // empty playlist
+                    continue;
+                final Uri uri = AndroidUtil.LocationToUri(location);
+                if (cursor.isNull(2))
+                    medias.add(new MediaWrapper(uri));
+                else
+                    medias.add(new MediaWrapper(uri,
+                            cursor.getLong(3),
+                            cursor.getLong(4),
+                            cursor.getInt(5),
+                            null, // lazy loading, see getPicture()
+                            cursor.getString(6),
+                            cursor.getString(7),
+                            cursor.getString(8),
+                            cursor.getString(9),
+                            cursor.getString(10),
+                            cursor.getInt(11),
+                            cursor.getInt(12),
+                            cursor.getString(13),
+                            cursor.getInt(14),
+                            cursor.getInt(15),
+                            cursor.getInt(16),
+                            cursor.getInt(17),
+                            cursor.getLong(18)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return playlists;
     }
 
     /**
@@ -455,80 +728,6 @@ public class MediaDatabase {
             return null;
     }
 
-    /**
-     * Insert an item with location into playlistName at the specified position
-     *
-     * @param playlistName Unique name of the playlist
-     * @param position Position to insert into
-     * @param mrl MRL of the media
-     */
-    public void playlistInsertItem(String playlistName, int position, String mrl) {
-        playlistShiftItems(playlistName, position, 1);
-
-        ContentValues values = new ContentValues();
-        values.put(PLAYLIST_MEDIA_PLAYLISTNAME, playlistName);
-        values.put(PLAYLIST_MEDIA_MEDIALOCATION, mrl);
-        values.put(PLAYLIST_MEDIA_ORDER, position);
-        mDb.insert(PLAYLIST_MEDIA_TABLE_NAME, "NULL", values);
-    }
-
-    /**
-     * Shifts all items starting at position by the given factor.
-     *
-     * For instance:
-     * Before:
-     * 0 - A
-     * 1 - B
-     * 2 - C
-     * 3 - D
-     *
-     * After playlistShiftItems(playlist, 1, 1):
-     * 0 - A
-     * 2 - B
-     * 3 - C
-     * 4 - D
-     *
-     * @param playlistName Unique name of the playlist
-     * @param position Position to start shifting at
-     * @param factor Factor to shift the order by
-     */
-    private void playlistShiftItems(String playlistName, int position, int factor) {
-        // Increment all media orders by 1 after the insert position
-        Cursor c = mDb.query(
-                PLAYLIST_MEDIA_TABLE_NAME,
-                new String[] { PLAYLIST_MEDIA_ID, PLAYLIST_MEDIA_ORDER },
-                PLAYLIST_MEDIA_PLAYLISTNAME + "=? AND " + PLAYLIST_MEDIA_ORDER + " >= ?",
-                new String[] { playlistName, String.valueOf(position) },
-                null, null,
-                PLAYLIST_MEDIA_ORDER + " ASC");
-        if (c != null) {
-            while (c.moveToNext()) {
-                ContentValues cv = new ContentValues();
-                int ii = c.getInt(c.getColumnIndex(PLAYLIST_MEDIA_ORDER)) + factor;
-                Log.d(TAG, "ii = " + ii);
-                cv.put(PLAYLIST_MEDIA_ORDER, ii /* i */);
-                mDb.update(PLAYLIST_MEDIA_TABLE_NAME, cv, PLAYLIST_MEDIA_ID + "=?",
-                        new String[]{c.getString(c.getColumnIndex(PLAYLIST_MEDIA_ID))});
-            }
-            c.close();
-        }
-    }
-
-    /**
-     * Removes the item at the given position
-     *
-     * @param playlistName Unique name of the playlist
-     * @param position Position to remove
-     */
-    public void playlistRemoveItem(String playlistName, int position) {
-        mDb.delete(PLAYLIST_MEDIA_TABLE_NAME,
-                PLAYLIST_MEDIA_PLAYLISTNAME + "=? AND " +
-                PLAYLIST_MEDIA_ORDER + "=?",
-                new String[] { playlistName, Integer.toString(position) });
-
-        playlistShiftItems(playlistName, position + 1, -1);
-    }
-
     /**
      * Rename the specified playlist.
      *
@@ -538,21 +737,30 @@ public class MediaDatabase {
      * already exists, true otherwise
      */
     public boolean playlistRename(String playlistName, String newPlaylistName) {
-        if(!playlistExists(playlistName) || playlistExists(newPlaylistName))
-            return false;
-
-        // Update playlist table
-        ContentValues values = new ContentValues();
-        values.put(PLAYLIST_NAME, newPlaylistName);
-        mDb.update(PLAYLIST_TABLE_NAME, values, PLAYLIST_NAME + " =?",
-                new String[] { playlistName });
+        lockWrite("MediaDatabase.playlistRename");
+        mDb.beginTransaction();
+        try {
+            if(!playlistExists(playlistName) || playlistExists(newPlaylistName))
+                return false;
 
-        // Update playlist media table
-        values = new ContentValues();
-        values.put(PLAYLIST_MEDIA_PLAYLISTNAME, newPlaylistName);
-        mDb.update(PLAYLIST_MEDIA_TABLE_NAME, values,
-                PLAYLIST_MEDIA_PLAYLISTNAME + " =?",
-                new String[]{ playlistName });
+            // Update playlist table
+            ContentValues values = new ContentValues();
+            values.put(PLAYLIST_NAME, newPlaylistName);
+            mDb.update(PLAYLIST_TABLE_NAME, values, PLAYLIST_NAME + " =?",
+                    new String[] { playlistName });
+
+            // Update playlist media table
+            values = new ContentValues();
+            values.put(PLAYLIST_MEDIA_PLAYLISTNAME, newPlaylistName);
+            mDb.update(PLAYLIST_MEDIA_TABLE_NAME, values,
+                    PLAYLIST_MEDIA_PLAYLISTNAME + " =?",
+                    new String[]{ playlistName });
+            mPlaylistsVersion.incrementAndGet();
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            unlockWrite();
+        }
 
         return true;
     }
@@ -568,7 +776,7 @@ public class MediaDatabase {
      * Add a new media to the database. The picture can only added by update.
      * @param media which you like to add to the database
      */
-    public synchronized void addMedia(MediaWrapper media) {
+    public void addMedia(MediaWrapper media) {
 
         ContentValues values = new ContentValues();
 
@@ -590,7 +798,14 @@ public class MediaDatabase {
         values.put(MEDIA_DISCNUMBER, media.getDiscNumber());
         values.put(MEDIA_LAST_MODIFIED, media.getLastModified());
 
-        mDb.replace(MEDIA_TABLE_NAME, "NULL", values);
+        lockWrite("MediaDatabase.addMedia");
+        try {
+            mDb.replace(MEDIA_TABLE_NAME, "NULL", values);
+        } finally {
+            unlockWrite();
+        }
+        changeResumeState(new ResumeStateChange(media.getUri().toString(), new ResumeState(media.getType(),
+                media.getTime(), media.getLength(), media.getAudioTrack(), media.getSpuTrack()), null));
 
     }
 
@@ -599,7 +814,7 @@ public class MediaDatabase {
      * @param location of the item (primary key)
      * @return True if the item exists, false if it does not
      */
-    public synchronized boolean mediaItemExists(Uri uri) {
+    public boolean mediaItemExists(Uri uri) {
         try {
             Cursor cursor = mDb.query(MEDIA_TABLE_NAME,
                     new String[] { MEDIA_LOCATION },
@@ -623,7 +838,7 @@ public class MediaDatabase {
      * @return list of File
      */
     @SuppressWarnings("unused")
-    private synchronized HashSet<File> getMediaFiles() {
+    private HashSet<File> getMediaFiles() {
 
         HashSet<File> files = new HashSet<File>();
         Cursor cursor;
@@ -646,16 +861,73 @@ public class MediaDatabase {
         return files;
     }
 
-    public synchronized Cursor queryMedia(String query){
-        String[] queryColumns = new String[]{MEDIA_LOCATION, MEDIA_TITLE};
-        return mDb.query(MEDIA_VIRTUAL_TABLE_NAME, queryColumns, MEDIA_VIRTUAL_TABLE_NAME+" MATCH ?",
-                new String[]{query + "*"}, null, null, null, null);
+    /**
+     * Build a FTS MATCH expression matching all the words of the user query as prefixes.
+     *
+     * @return null if the query has no searchable word
+     */
+    @Nullable
+    private static String buildMatchQuery(String query) {
+        final StringBuilder sb = new StringBuilder();
+        for (String word : searchWords(query)) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(word).append('*');
+        }
+        return sb.length() > 0 ? sb.toString() : null;
     }
 
-    public synchronized ArrayList<String> searchMedia(String filter){
+    /**
+     * Split a user query in lowercase words, dropping the FTS syntax characters.
+     */
+    private static List<String> searchWords(String query) {
+        final ArrayList<String> words = new ArrayList<String>();
+        final StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= query.length(); ++i) {
+            final char c = i < query.length() ? query.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c))
+                word.append(Character.toLowerCase(c));
+            else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    public Cursor queryMedia(String query) {
+        return queryMedia(query, SEARCH_SUGGESTIONS_LIMIT, 0);
+    }
+
+    /**
+     * Search the media whose title, artist, genre or album start with the words of query.
+     * Media whose title starts with the query come first, then media with a title word
+     * starting with the query, then the other matches.
+     *
+     * @param query the user query
+     * @param limit maximum number of results
+     * @param offset number of results to skip, for paging
+     * @return a cursor with the MEDIA_LOCATION and MEDIA_TITLE columns, or null
+     */
+    @Nullable
+    public Cursor queryMedia(String query, int limit, int offset) {
+        final String match = buildMatchQuery(query);
+        if (match == null)
+            return null;
+        final String firstWord = searchWords(query).get(0);
+        return mDb.rawQuery("SELECT m." + MEDIA_LOCATION + ", m." + MEDIA_TITLE +
+                " FROM " + MEDIA_VIRTUAL_TABLE_NAME + " f JOIN " + MEDIA_TABLE_NAME + " m ON m.rowid = f.docid" +
+                " WHERE f." + MEDIA_VIRTUAL_TABLE_NAME + " MATCH ?" +
+                " ORDER BY CASE WHEN m." + MEDIA_TITLE + " LIKE ? THEN 0" +
+                " WHEN m." + MEDIA_TITLE + " LIKE ? THEN 1 ELSE 2 END, m." + MEDIA_TITLE + " COLLATE NOCASE" +
+                " LIMIT " + limit + " OFFSET " + offset,
+                new String[] { match, firstWord + "%", "% " + firstWord + "%" });
+    }
+
+    public ArrayList<String> searchMedia(String filter, int limit, int offset) {
 
         ArrayList<String> mediaList = new ArrayList<String>();
-        Cursor cursor = queryMedia(filter);
+        Cursor cursor = queryMedia(filter, limit, offset);
         if (cursor != null) {
             if (cursor.moveToFirst()) {
                 do {
@@ -667,7 +939,8 @@ public class MediaDatabase {
         return mediaList;
     }
 
-    public synchronized HashMap<String, MediaWrapper> getMedias() {
+    public HashMap<String, MediaWrapper> getMedias() {
+        final long start = Trace.begin();
 
         Cursor cursor;
         HashMap<String, MediaWrapper> medias = new HashMap<String, MediaWrapper>();
@@ -735,47 +1008,208 @@ public class MediaDatabase {
             chunk_count++;
         } while (count == CHUNK_SIZE);
 
+        synchronized (mPendingUpdates) {
+            for (Map.Entry<String, ContentValues> entry : mPendingUpdates.entrySet()) {
+                final MediaWrapper media = medias.get(entry.getKey());
+                if (media != null)
+                    applyPendingUpdates(media, entry.getValue());
+            }
+        }
+        Trace.end("MediaDatabase.getMedias", start);
         return medias;
     }
 
-    public synchronized HashMap<String, Long> getVideoTimes() {
+    /**
+     * Playback state of a media, to resume it
+     */
+    public static class ResumeState {
+        public final int type;
+        public final long time;
+        public final long length;
+        public final int audioTrack;
+        public final int spuTrack;
+
+        public ResumeState(int type, long time, long length, int audioTrack, int spuTrack) {
+            this.type = type;
+            this.time = time;
+            this.length = length;
+            this.audioTrack = audioTrack;
+            this.spuTrack = spuTrack;
+        }
+    }
 
-        Cursor cursor;
-        HashMap<String, Long> times = new HashMap<String, Long>();
-        int chunk_count = 0;
-        int count;
+    /**
+     * A change of the resume states cache: put state, merge values, remove location if both
+     * are null, or clear everything if location is null.
+     */
+    private static class ResumeStateChange {
+        final String location;
+        final ResumeState state;
+        final ContentValues values;
+
+        ResumeStateChange(String location, ResumeState state, ContentValues values) {
+            this.location = location;
+            this.state = state;
+            this.values = values;
+        }
 
-        do {
-            count = 0;
-            cursor = mDb.rawQuery(String.format(Locale.US,
-                    "SELECT %s,%s FROM %s WHERE %s=%d LIMIT %d OFFSET %d",
-                    MEDIA_LOCATION, //0 string
-                    MEDIA_TIME, //1 long
-                    MEDIA_TABLE_NAME,
-                    MEDIA_TYPE,
-                    MediaWrapper.TYPE_VIDEO,
-                    CHUNK_SIZE,
-                    chunk_count * CHUNK_SIZE), null);
+        void apply(HashMap<String, ResumeState> states) {
+            if (location == null)
+                states.clear();
+            else if (state != null)
+                states.put(location, state);
+            else if (values != null) {
+                final ResumeState current = states.get(location);
+                if (current != null)
+                    states.put(location, mergeResumeState(current, values));
+            } else
+                states.remove(location);
+        }
+    }
 
-            if (cursor != null) {
-                if (cursor.moveToFirst()) {
-                    do {
-                        String location = cursor.getString(0);
-                        long time = cursor.getLong(1);
-                        times.put(location, time);
-                        count++;
-                    } while (cursor.moveToNext());
-                }
+    /**
+     * Never waits for the cache to be loaded: until it is, the state is read from the database.
+     *
+     * @return the saved playback state of a media, or null if it is not in the media library
+     */
+    public ResumeState getResumeState(Uri uri) {
+        if (uri == null)
+            return null;
+        final String location = uri.toString();
+        if (mResumeStates == null)
+            return queryResumeState(location);
+        synchronized (mResumeStatesLock) {
+            return mResumeStates.get(location);
+        }
+    }
 
-                cursor.close();
-            }
-            chunk_count++;
-        } while (count == CHUNK_SIZE);
+    private ResumeState queryResumeState(String location) {
+        /* Take the queued values first: the ones flushed meanwhile are in the table */
+        final ContentValues pending;
+        synchronized (mPendingUpdates) {
+            pending = mPendingUpdates.get(location);
+        }
+        ResumeState state = null;
+        final Cursor cursor = mDb.query(MEDIA_TABLE_NAME,
+                new String[] {
+                        MEDIA_TYPE, //0 int
+                        MEDIA_TIME, //1 long
+                        MEDIA_LENGTH, //2 long
+                        MEDIA_AUDIOTRACK, //3 int
+                        MEDIA_SPUTRACK, //4 int
+                }, MEDIA_LOCATION + "=?", new String[] { location }, null, null, null);
+        if (cursor != null) {
+            if (cursor.moveToFirst())
+                state = new ResumeState(cursor.getInt(0), cursor.getLong(1), cursor.getLong(2),
+                        cursor.getInt(3), cursor.getInt(4));
+            cursor.close();
+        }
+        return state != null && pending != null ? mergeResumeState(state, pending) : state;
+    }
 
+    /**
+     * Never waits for the cache to be loaded: until it is, no time is returned, and the
+     * handlers given to {@link #addResumeStatesHandler(Handler)} get RESUME_STATES_LOADED
+     * once it is.
+     *
+     * @return the saved times of the videos, by location
+     */
+    public HashMap<String, Long> getVideoTimes() {
+        final HashMap<String, Long> times = new HashMap<String, Long>();
+        if (mResumeStates == null)
+            return times;
+        synchronized (mResumeStatesLock) {
+            for (Map.Entry<String, ResumeState> entry : mResumeStates.entrySet())
+                if (entry.getValue().type == MediaWrapper.TYPE_VIDEO)
+                    times.put(entry.getKey(), entry.getValue().time);
+        }
         return times;
     }
 
-    public synchronized MediaWrapper getMedia(Uri uri) {
+    public void addResumeStatesHandler(Handler handler) {
+        synchronized (mResumeStatesLock) {
+            mResumeStatesHandlers.add(handler);
+        }
+    }
+
+    public void removeResumeStatesHandler(Handler handler) {
+        synchronized (mResumeStatesLock) {
+            mResumeStatesHandlers.remove(handler);
+        }
+    }
+
+    /**
+     * Load the resume states in the background, so that no reader waits for them
+     */
+    private void preloadResumeStates() {
+        mUpdateExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadResumeStates();
+            }
+        });
+    }
+
+    /* Runs on mUpdateExecutor, the lock is only taken to publish the loaded states */
+    private void loadResumeStates() {
+        final long start = Trace.begin();
+        final HashMap<String, ResumeState> states = new HashMap<String, ResumeState>();
+        final Cursor cursor = mDb.query(MEDIA_TABLE_NAME,
+                new String[] {
+                        MEDIA_LOCATION, //0 string
+                        MEDIA_TYPE, //1 int
+                        MEDIA_TIME, //2 long
+                        MEDIA_LENGTH, //3 long
+                        MEDIA_AUDIOTRACK, //4 int
+                        MEDIA_SPUTRACK, //5 int
+                }, null, null, null, null, null);
+        if (cursor != null) {
+            while (cursor.moveToNext())
+                states.put(cursor.getString(0), new ResumeState(cursor.getInt(1), cursor.getLong(2),
+                        cursor.getLong(3), cursor.getInt(4), cursor.getInt(5)));
+            cursor.close();
+        }
+        final ArrayList<Handler> handlers;
+        synchronized (mResumeStatesLock) {
+            /* Replay the changes done since the query started, or even before: applying
+             * one which is already in the table changes nothing */
+            for (ResumeStateChange change : mResumeStateChanges)
+                change.apply(states);
+            mResumeStateChanges = null;
+            mResumeStates = states;
+            handlers = new ArrayList<Handler>(mResumeStatesHandlers);
+        }
+        for (Handler handler : handlers)
+            handler.sendEmptyMessage(RESUME_STATES_LOADED);
+        Trace.end("MediaDatabase.loadResumeStates", start);
+    }
+
+    private void changeResumeState(ResumeStateChange change) {
+        synchronized (mResumeStatesLock) {
+            if (mResumeStates != null)
+                change.apply(mResumeStates);
+            else
+                mResumeStateChanges.add(change);
+        }
+    }
+
+    private void updateResumeState(String location, ContentValues values) {
+        changeResumeState(new ResumeStateChange(location, null, values));
+    }
+
+    private static ResumeState mergeResumeState(ResumeState state, ContentValues values) {
+        return new ResumeState(state.type,
+                values.containsKey(MEDIA_TIME) ? values.getAsLong(MEDIA_TIME) : state.time,
+                values.containsKey(MEDIA_LENGTH) ? values.getAsLong(MEDIA_LENGTH) : state.length,
+                values.containsKey(MEDIA_AUDIOTRACK) ? values.getAsInteger(MEDIA_AUDIOTRACK) : state.audioTrack,
+                values.containsKey(MEDIA_SPUTRACK) ? values.getAsInteger(MEDIA_SPUTRACK) : state.spuTrack);
+    }
+
+    private void removeResumeState(String location) {
+        changeResumeState(new ResumeStateChange(location, null, null));
+    }
+
+    public MediaWrapper getMedia(Uri uri) {
 
         Cursor cursor;
         MediaWrapper media = null;
@@ -828,13 +1262,14 @@ public class MediaDatabase {
                         cursor.getInt(13),
                         cursor.getInt(14),
                         cursor.getLong(15));
+                applyPendingUpdates(media);
             }
             cursor.close();
         }
         return media;
     }
 
-    public synchronized Bitmap getPicture(Uri uri) {
+    public Bitmap getPicture(Uri uri) {
         /* Used for the lazy loading */
         Cursor cursor;
         Bitmap picture = null;
@@ -864,33 +1299,48 @@ public class MediaDatabase {
         return picture;
     }
 
-    public synchronized void removeMedia(Uri uri) {
+    public void removeMedia(Uri uri) {
+        lockWrite("MediaDatabase.removeMedia");
+        try {
+            deleteMedia(uri);
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    /* Must be called with the write lock held */
+    private void deleteMedia(Uri uri) {
         mDb.delete(MEDIA_TABLE_NAME, MEDIA_LOCATION + "=?", new String[]{uri.toString()});
+        removeResumeState(uri.toString());
     }
 
     public void removeMedias(Collection<Uri> uris) {
+        lockWrite("MediaDatabase.removeMedias");
         mDb.beginTransaction();
         try {
             for (Uri uri : uris)
-                removeMedia(uri);
+                deleteMedia(uri);
             mDb.setTransactionSuccessful();
         } finally {
             mDb.endTransaction();
+            unlockWrite();
         }
     }
 
     public void removeMediaWrappers(Collection<MediaWrapper> mws) {
+        lockWrite("MediaDatabase.removeMediaWrappers");
         mDb.beginTransaction();
         try {
             for (MediaWrapper mw : mws)
-                removeMedia(mw.getUri());
+                deleteMedia(mw.getUri());
             mDb.setTransactionSuccessful();
         } finally {
             mDb.endTransaction();
+            unlockWrite();
         }
     }
 
-    public synchronized void updateMedia(Uri uri, mediaColumn col,
+    public void updateMedia(Uri uri, mediaColumn col,
             Object object) {
 
         if (uri == null)
@@ -928,7 +1378,163 @@ public class MediaDatabase {
             default:
                 return;
         }
-        mDb.update(MEDIA_TABLE_NAME, values, MEDIA_LOCATION + "=?", new String[]{uri.toString()});
+        lockWrite("MediaDatabase.updateMedia");
+        try {
+            mDb.update(MEDIA_TABLE_NAME, values, MEDIA_LOCATION + "=?", new String[]{uri.toString()});
+        } finally {
+            unlockWrite();
+        }
+        updateResumeState(uri.toString(), values);
+    }
+
+    /**
+     * Queue an update of the playback state of a media, without touching the database.
+     *
+     * Updates of the same media are coalesced, the last value of a column wins. They are
+     * written in a single transaction on a background thread, UPDATE_FLUSH_DELAY ms after
+     * the first queued one or on {@link #flushUpdates()}. Reads of this class see the queued
+     * values.
+     *
+     * @param col MEDIA_TIME, MEDIA_AUDIOTRACK or MEDIA_SPUTRACK
+     */
+    public void queueMediaUpdate(Uri uri, mediaColumn col, Object object) {
+        if (uri == null || object == null)
+            return;
+        final String location = uri.toString();
+        /* Replace rather than modify the pending values, see flushPendingUpdates() */
+        final ContentValues values = new ContentValues();
+        synchronized (mPendingUpdates) {
+            final ContentValues pending = mPendingUpdates.get(location);
+            if (pending != null)
+                values.putAll(pending);
+            switch (col) {
+                case MEDIA_TIME:
+                    values.put(MEDIA_TIME, (Long)object);
+                    break;
+                case MEDIA_AUDIOTRACK:
+                    values.put(MEDIA_AUDIOTRACK, (Integer)object);
+                    break;
+                case MEDIA_SPUTRACK:
+                    values.put(MEDIA_SPUTRACK, (Integer)object);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Column " + col + " can't be queued");
+            }
+            mPendingUpdates.put(location, values);
+            if (!mFlushScheduled) {
+                mFlushScheduled = true;
+                mUpdateExecutor.schedule(mFlushRunnable, UPDATE_FLUSH_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+        updateResumeState(location, values);
+    }
+
+    /**
+     * Write the queued updates in the background now. Never blocks on the database.
+     */
+    public void flushUpdates() {
+        mUpdateExecutor.execute(mFlushRunnable);
+    }
+
+    /**
+     * Write the queued updates and wait for them, for at most timeout ms.
+     * Meant for shutdown, when the process may not survive a background write.
+     *
+     * @return true if the updates were written in time
+     */
+    public boolean flushUpdates(long timeout) {
+        final Future<Boolean> flush = mUpdateExecutor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return flushPendingUpdates();
+            }
+        });
+        try {
+            return flush.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Failed to flush the media updates", e.getCause());
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Media updates not written after " + timeout + " ms");
+        }
+        return false;
+    }
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushPendingUpdates();
+        }
+    };
+
+    /* Runs on mUpdateExecutor, returns false if the updates could not be written */
+    private boolean flushPendingUpdates() {
+        final HashMap<String, ContentValues> updates;
+        synchronized (mPendingUpdates) {
+            mFlushScheduled = false;
+            if (mPendingUpdates.isEmpty())
+                return true;
+            updates = new HashMap<String, ContentValues>(mPendingUpdates);
+        }
+
+        boolean committed = false;
+        lockWrite("MediaDatabase.flushUpdates");
+        try {
+            mDb.beginTransaction();
+            try {
+                for (Map.Entry<String, ContentValues> entry : updates.entrySet())
+                    mDb.update(MEDIA_TABLE_NAME, entry.getValue(), MEDIA_LOCATION + "=?",
+                            new String[] { entry.getKey() });
+                mDb.setTransactionSuccessful();
+            } finally {
+                /* commits, and may fail doing so */
+                mDb.endTransaction();
+            }
+            committed = true;
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to write " + updates.size() + " media updates, will retry", e);
+        } finally {
+            unlockWrite();
+        }
+
+        if (!committed) {
+            /* Keep the updates pending, and try again later */
+            synchronized (mPendingUpdates) {
+                if (!mFlushScheduled) {
+                    mFlushScheduled = true;
+                    mUpdateExecutor.schedule(mFlushRunnable, UPDATE_FLUSH_DELAY, TimeUnit.MILLISECONDS);
+                }
+            }
+            return false;
+        }
+
+        /* Pending values stay visible to the readers until they are committed, drop
+         * the ones that have not been replaced meanwhile */
+        synchronized (mPendingUpdates) {
+            for (Map.Entry<String, ContentValues> entry : updates.entrySet())
+                if (mPendingUpdates.get(entry.getKey()) == entry.getValue())
+                    mPendingUpdates.remove(entry.getKey());
+        }
+        return true;
+    }
+
+    private void applyPendingUpdates(MediaWrapper media) {
+        final ContentValues values;
+        synchronized (mPendingUpdates) {
+            values = mPendingUpdates.get(media.getUri().toString());
+        }
+        if (values != null)
+            applyPendingUpdates(media, values);
+    }
+
+    private static void applyPendingUpdates(MediaWrapper media, ContentValues values) {
+        if (values.containsKey(MEDIA_TIME))
+            media.setTime(values.getAsLong(MEDIA_TIME));
+        if (values.containsKey(MEDIA_AUDIOTRACK))
+            media.setAudioTrack(values.getAsInteger(MEDIA_AUDIOTRACK));
+        if (values.containsKey(MEDIA_SPUTRACK))
+            media.setSpuTrack(values.getAsInteger(MEDIA_SPUTRACK));
     }
 
     /**
@@ -936,10 +1542,15 @@ public class MediaDatabase {
      *
      * @param path
      */
-    public synchronized void addDir(String path) {
+    public void addDir(String path) {
         ContentValues values = new ContentValues();
         values.put(DIR_ROW_PATH, path);
-        mDb.insert(DIR_TABLE_NAME, null, values);
+        lockWrite("MediaDatabase.addDir");
+        try {
+            mDb.insert(DIR_TABLE_NAME, null, values);
+        } finally {
+            unlockWrite();
+        }
     }
 
     /**
@@ -947,8 +1558,13 @@ public class MediaDatabase {
      *
      * @param path
      */
-    public synchronized void removeDir(String path) {
-        mDb.delete(DIR_TABLE_NAME, DIR_ROW_PATH + "=?", new String[]{path});
+    public void removeDir(String path) {
+        lockWrite("MediaDatabase.removeDir");
+        try {
+            mDb.delete(DIR_TABLE_NAME, DIR_ROW_PATH + "=?", new String[]{path});
+        } finally {
+            unlockWrite();
+        }
     }
 
     /**
@@ -956,11 +1572,16 @@ public class MediaDatabase {
      *
      * @param path
      */
-    public synchronized void recursiveRemoveDir(String path) {
-        for(File f : getMediaDirs()) {
-            final String dirPath = f.getPath();
-            if(dirPath.startsWith(path))
-                mDb.delete(DIR_TABLE_NAME, DIR_ROW_PATH + "=?", new String[] { dirPath });
+    public void recursiveRemoveDir(String path) {
+        lockWrite("MediaDatabase.recursiveRemoveDir");
+        try {
+            for(File f : getMediaDirs()) {
+                final String dirPath = f.getPath();
+                if(dirPath.startsWith(path))
+                    mDb.delete(DIR_TABLE_NAME, DIR_ROW_PATH + "=?", new String[] { dirPath });
+            }
+        } finally {
+            unlockWrite();
         }
 
     }
@@ -969,7 +1590,7 @@ public class MediaDatabase {
      *
      * @return
      */
-    public synchronized List<File> getMediaDirs() {
+    public List<File> getMediaDirs() {
 
         List<File> paths = new ArrayList<File>();
         Cursor cursor;
@@ -992,7 +1613,7 @@ public class MediaDatabase {
         return paths;
     }
 
-    private synchronized boolean mediaDirExists(String path) {
+    private boolean mediaDirExists(String path) {
         Cursor cursor = mDb.query(DIR_TABLE_NAME,
                 new String[] { DIR_ROW_PATH },
                 DIR_ROW_PATH + "=?",
@@ -1007,7 +1628,7 @@ public class MediaDatabase {
      *
      * @param key
      */
-    public synchronized void addSearchhistoryItem(String key) {
+    public void addSearchhistoryItem(String key) {
         // set the format to sql date time
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
         Date date = new Date();
@@ -1015,10 +1636,15 @@ public class MediaDatabase {
         values.put(SEARCHHISTORY_KEY, key);
         values.put(SEARCHHISTORY_DATE, dateFormat.format(date));
 
-        mDb.replace(SEARCHHISTORY_TABLE_NAME, null, values);
+        lockWrite("MediaDatabase.addSearchhistoryItem");
+        try {
+            mDb.replace(SEARCHHISTORY_TABLE_NAME, null, values);
+        } finally {
+            unlockWrite();
+        }
     }
 
-    public synchronized ArrayList<String> getSearchhistory(int size) {
+    public ArrayList<String> getSearchhistory(int size) {
         ArrayList<String> history = new ArrayList<String>();
 
         Cursor cursor = mDb.query(SEARCHHISTORY_TABLE_NAME,
@@ -1035,11 +1661,16 @@ public class MediaDatabase {
         return history;
     }
 
-    public synchronized void clearSearchHistory() {
-        mDb.delete(SEARCHHISTORY_TABLE_NAME, null, null);
+    public void clearSearchHistory() {
+        lockWrite("MediaDatabase.clearSearchHistory");
+        try {
+            mDb.delete(SEARCHHISTORY_TABLE_NAME, null, null);
+        } finally {
+            unlockWrite();
+        }
     }
 
-    public synchronized void addMrlhistoryItem(String uri) {
+    public void addMrlhistoryItem(String uri) {
         // set the format to sql date time
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
         Date date = new Date();
@@ -1047,10 +1678,15 @@ public class MediaDatabase {
         values.put(MRL_URI, uri);
         values.put(MRL_DATE, dateFormat.format(date));
 
-        mDb.replace(MRL_TABLE_NAME, null, values);
+        lockWrite("MediaDatabase.addMrlhistoryItem");
+        try {
+            mDb.replace(MRL_TABLE_NAME, null, values);
+        } finally {
+            unlockWrite();
+        }
     }
 
-    public synchronized ArrayList<String> getMrlhistory() {
+    public ArrayList<String> getMrlhistory() {
         ArrayList<String> history = new ArrayList<String>();
 
         Cursor cursor = mDb.query(MRL_TABLE_NAME,
@@ -1069,23 +1705,38 @@ public class MediaDatabase {
         return history;
     }
 
-    public synchronized void deleteMrlUri(String uri) {
-        mDb.delete(MRL_TABLE_NAME, MRL_URI + "=?", new String[]{uri});
+    public void deleteMrlUri(String uri) {
+        lockWrite("MediaDatabase.deleteMrlUri");
+        try {
+            mDb.delete(MRL_TABLE_NAME, MRL_URI + "=?", new String[]{uri});
+        } finally {
+            unlockWrite();
+        }
     }
 
-    public synchronized void clearMrlHistory() {
-        mDb.delete(MRL_TABLE_NAME, null, null);
+    public void clearMrlHistory() {
+        lockWrite("MediaDatabase.clearMrlHistory");
+        try {
+            mDb.delete(MRL_TABLE_NAME, null, null);
+        } finally {
+            unlockWrite();
+        }
     }
 
 
-    public synchronized void addNetworkFavItem(Uri uri, String title) {
+    public void addNetworkFavItem(Uri uri, String title) {
         ContentValues values = new ContentValues();
         values.put(NETWORK_FAV_URI, uri.toString());
         values.put(NETWORK_FAV_TITLE, Uri.encode(title));
-        mDb.replace(NETWORK_FAV_TABLE_NAME, null, values);
+        lockWrite("MediaDatabase.addNetworkFavItem");
+        try {
+            mDb.replace(NETWORK_FAV_TABLE_NAME, null, values);
+        } finally {
+            unlockWrite();
+        }
     }
 
-    public synchronized boolean networkFavExists(Uri uri) {
+    public boolean networkFavExists(Uri uri) {
         Cursor cursor = mDb.query(NETWORK_FAV_TABLE_NAME,
                 new String[] { NETWORK_FAV_URI },
                 NETWORK_FAV_URI + "=?",
@@ -1099,7 +1750,7 @@ public class MediaDatabase {
             return false;
     }
 
-    public synchronized ArrayList<MediaWrapper> getAllNetworkFav() {
+    public ArrayList<MediaWrapper> getAllNetworkFav() {
         ArrayList<MediaWrapper> favs = new ArrayList<MediaWrapper>();
 
         MediaWrapper mw;
@@ -1119,18 +1770,34 @@ public class MediaDatabase {
         return favs;
     }
 
-    public synchronized void deleteNetworkFav(Uri uri) {
-        mDb.delete(NETWORK_FAV_TABLE_NAME, NETWORK_FAV_URI + "=?", new String[] { uri.toString() });
+    public void deleteNetworkFav(Uri uri) {
+        lockWrite("MediaDatabase.deleteNetworkFav");
+        try {
+            mDb.delete(NETWORK_FAV_TABLE_NAME, NETWORK_FAV_URI + "=?", new String[] { uri.toString() });
+        } finally {
+            unlockWrite();
+        }
     }
 
-    public synchronized void clearNetworkFavTable() {
-        mDb.delete(NETWORK_FAV_TABLE_NAME, null, null);
+    public void clearNetworkFavTable() {
+        lockWrite("MediaDatabase.clearNetworkFavTable");
+        try {
+            mDb.delete(NETWORK_FAV_TABLE_NAME, null, null);
+        } finally {
+            unlockWrite();
+        }
     }
     /**
      * Empty the database for debugging purposes
      */
-    public synchronized void emptyDatabase() {
-        mDb.delete(MEDIA_TABLE_NAME, null, null);
+    public void emptyDatabase() {
+        lockWrite("MediaDatabase.emptyDatabase");
+        try {
+            mDb.delete(MEDIA_TABLE_NAME, null, null);
+        } finally {
+            unlockWrite();
+        }
+        changeResumeState(new ResumeStateChange(null, null, null));
     }
 
     public static void setPicture(MediaWrapper m, Bitmap p) {
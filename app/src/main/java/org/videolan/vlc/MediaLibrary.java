@@ -34,6 +34,7 @@ import org.videolan.libvlc.util.Extensions;
 import org.videolan.vlc.gui.audio.AudioBrowserListAdapter;
 import org.videolan.vlc.interfaces.IBrowser;
 import org.videolan.vlc.util.AndroidDevices;
+import org.videolan.vlc.util.Trace;
 import org.videolan.vlc.util.Util;
 import org.videolan.vlc.util.VLCInstance;
 import org.videolan.vlc.util.WeakHandler;
@@ -61,12 +62,18 @@ public class MediaLibrary {
 
     private static MediaLibrary mInstance;
     private final ArrayList<MediaWrapper> mItemList;
+    /* location -> item of mItemList, guarded by mItemListLock */
+    private final HashMap<String, MediaWrapper> mItemMap;
+    /* search index of mItemList, guarded by mItemListLock */
+    private final MediaSearchIndex mSearchIndex;
     private final ArrayList<Handler> mUpdateHandler;
     private final ReadWriteLock mItemListLock;
     private boolean isStopping = false;
     private boolean mRestart = false;
     protected Thread mLoadingThread;
     private WeakReference<IBrowser> mBrowser = null;
+    private HashMap<String, ArrayList<MediaWrapper>> mPlaylistsCache = null;
+    private int mPlaylistsCacheVersion;
 
     public final static HashSet<String> FOLDER_BLACKLIST;
     static {
@@ -90,6 +97,8 @@ public class MediaLibrary {
     private MediaLibrary() {
         mInstance = this;
         mItemList = new ArrayList<MediaWrapper>();
+        mItemMap = new HashMap<String, MediaWrapper>();
+        mSearchIndex = new MediaSearchIndex();
         mUpdateHandler = new ArrayList<Handler>();
         mItemListLock = new ReentrantReadWriteLock();
     }
@@ -141,12 +150,27 @@ public class MediaLibrary {
     }
 
     public ArrayList<MediaWrapper> searchMedia(String query){
+        return searchMedia(query, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Search the media library in memory, falls back to the database while no media is loaded
+     * yet.
+     */
+    public ArrayList<MediaWrapper> searchMedia(String query, int limit) {
+        mItemListLock.readLock().lock();
+        try {
+            if (mSearchIndex.size() > 0)
+                return mSearchIndex.search(query, limit);
+        } finally {
+            mItemListLock.readLock().unlock();
+        }
         ArrayList<MediaWrapper> mediaList = new ArrayList<MediaWrapper>();
-        ArrayList<String> pathList = MediaDatabase.getInstance().searchMedia(query);
-        if (!pathList.isEmpty()){
-            for (String path : pathList) {
-                mediaList.add(getMediaItem(path));
-            }
+        ArrayList<String> pathList = MediaDatabase.getInstance().searchMedia(query, limit, 0);
+        for (String path : pathList) {
+            final MediaWrapper media = getMediaItem(path);
+            if (media != null)
+                mediaList.add(media);
         }
         return mediaList;
     }
@@ -191,38 +215,81 @@ public class MediaLibrary {
     }
 
     public ArrayList<AudioBrowserListAdapter.ListItem> getPlaylistDbItems() {
-        ArrayList<AudioBrowserListAdapter.ListItem> playlistItems = new ArrayList<AudioBrowserListAdapter.ListItem>();
+        HashMap<String, ArrayList<MediaWrapper>> playlists = getPlaylistsMedias();
+        ArrayList<AudioBrowserListAdapter.ListItem> playlistItems = new ArrayList<AudioBrowserListAdapter.ListItem>(playlists.size());
         AudioBrowserListAdapter.ListItem playList;
-        MediaDatabase db = MediaDatabase.getInstance();
-        String[] items, playlistNames = db.getPlaylists();
-        for (String playlistName : playlistNames){
-            items = db.playlistGetItems(playlistName);
-            if (items == null)
-                continue;
-            playList = new AudioBrowserListAdapter.ListItem(playlistName, null, null, false);
-            for (String track : items){
-                playList.mMediaList.add(new MediaWrapper(AndroidUtil.LocationToUri(track)));
-            }
+        for (Map.Entry<String, ArrayList<MediaWrapper>> entry : playlists.entrySet()) {
+            playList = new AudioBrowserListAdapter.ListItem(entry.getKey(), null, null, false);
+            playList.mMediaList.addAll(entry.getValue());
             playlistItems.add(playList);
         }
         return playlistItems;
     }
 
+    /**
+     * The DB playlists are cached until the playlist tables or the media items change.
+     * Their media are the MediaLibrary items when available.
+     */
+    private synchronized HashMap<String, ArrayList<MediaWrapper>> getPlaylistsMedias() {
+        final MediaDatabase db = MediaDatabase.getInstance();
+        final int version = db.getPlaylistsVersion();
+        if (mPlaylistsCache != null && mPlaylistsCacheVersion == version)
+            return mPlaylistsCache;
+
+        final HashMap<String, ArrayList<MediaWrapper>> playlists = db.getPlaylistsMedias();
+        mItemListLock.readLock().lock();
+        for (ArrayList<MediaWrapper> medias : playlists.values()) {
+            for (int i = 0; i < medias.size(); ++i) {
+                final MediaWrapper item = mItemMap.get(medias.get(i).getLocation());
+                if (item != null)
+                    medias.set(i, item);
+            }
+        }
+        mItemListLock.readLock().unlock();
+        mPlaylistsCache = playlists;
+        mPlaylistsCacheVersion = version;
+        return playlists;
+    }
+
+    private synchronized void invalidatePlaylistsCache() {
+        mPlaylistsCache = null;
+    }
+
     public ArrayList<MediaWrapper> getMediaItems() {
         return mItemList;
     }
 
     public MediaWrapper getMediaItem(String location) {
         mItemListLock.readLock().lock();
-        for (int i = 0; i < mItemList.size(); i++) {
-            MediaWrapper item = mItemList.get(i);
-            if (item.getLocation().equals(location)) {
-                mItemListLock.readLock().unlock();
-                return item;
-            }
-        }
+        MediaWrapper item = mItemMap.get(location);
         mItemListLock.readLock().unlock();
-        return null;
+        return item;
+    }
+
+    public void removeMediaItem(MediaWrapper media) {
+        mItemListLock.writeLock().lock();
+        if (mItemList.remove(media)) {
+            mItemMap.remove(media.getLocation());
+            mSearchIndex.remove(media.getLocation());
+        }
+        mItemListLock.writeLock().unlock();
+    }
+
+    /**
+     * Index again a library media whose metadata changed, e.g. after a re-parse.
+     */
+    public void reindexMediaItem(MediaWrapper media) {
+        mItemListLock.writeLock().lock();
+        if (mItemMap.get(media.getLocation()) == media)
+            mSearchIndex.add(media);
+        mItemListLock.writeLock().unlock();
+    }
+
+    /* Must be called with mItemListLock write lock held */
+    private void addItem(MediaWrapper media) {
+        mItemList.add(media);
+        mItemMap.put(media.getLocation(), media);
+        mSearchIndex.add(media);
     }
 
     public ArrayList<MediaWrapper> getMediaItems(List<String> pathList) {
@@ -244,6 +311,7 @@ public class MediaLibrary {
 
         @Override
         public void run() {
+            final long scanStart = Trace.begin();
             LibVLC libVlcInstance = VLCInstance.get();
 
             // Initialize variables
@@ -266,7 +334,9 @@ public class MediaLibrary {
             directories.addAll(mediaDirs);
 
             // get all existing media items
+            long phaseStart = Trace.begin();
             HashMap<String, MediaWrapper> existingMedias = mediaDatabase.getMedias();
+            Trace.end("MediaLibrary.scan.load", phaseStart);
 
             // list of all added files
             HashSet<String> addedLocations = new HashSet<String>();
@@ -274,6 +344,8 @@ public class MediaLibrary {
             // clear all old items
             mItemListLock.writeLock().lock();
             mItemList.clear();
+            mItemMap.clear();
+            mSearchIndex.clear();
             mItemListLock.writeLock().unlock();
 
             MediaItemFilter mediaFileFilter = new MediaItemFilter();
@@ -281,6 +353,7 @@ public class MediaLibrary {
             int count = 0;
 
             LinkedList<File> mediaToScan = new LinkedList<File>();
+            phaseStart = Trace.begin();
             try {
                 LinkedList<String> dirsToIgnore = new LinkedList<String>();
                 // Count total files, and stack them
@@ -334,6 +407,8 @@ public class MediaLibrary {
                     }
                 }
 
+                Trace.end("MediaLibrary.scan.list", phaseStart);
+
                 //Remove ignored files
                 HashSet<Uri> mediasToRemove = new HashSet<Uri>();
                 String path;
@@ -343,7 +418,7 @@ public class MediaLibrary {
                     for (String dirPath : dirsToIgnore) {
                         if (path.startsWith(dirPath)) {
                             mediasToRemove.add(entry.getValue().getUri());
-                            mItemList.remove(existingMedias.get(path));
+                            removeMediaItem(entry.getValue());
                             continue outloop;
                         }
                     }
@@ -351,6 +426,7 @@ public class MediaLibrary {
                 mediaDatabase.removeMedias(mediasToRemove);
 
                 // Process the stacked items
+                phaseStart = Trace.begin();
                 for (File file : mediaToScan) {
                     String fileURI = AndroidUtil.FileToUri(file).toString();
                     if (mBrowser != null && mBrowser.get() != null)
@@ -365,7 +441,7 @@ public class MediaLibrary {
                         if (!addedLocations.contains(fileURI)) {
                             mItemListLock.writeLock().lock();
                             // get existing media item from database
-                            mItemList.add(existingMedias.get(fileURI));
+                            addItem(existingMedias.get(fileURI));
                             mItemListLock.writeLock().unlock();
                             addedLocations.add(fileURI);
                         }
@@ -373,7 +449,9 @@ public class MediaLibrary {
                         mItemListLock.writeLock().lock();
                         // create new media item
                         final Media media = new Media(libVlcInstance, Uri.parse(fileURI));
+                        final long parseStart = Trace.begin();
                         media.parse();
+                        Trace.end("MediaLibrary.parse", parseStart);
                         /* skip files with .mod extension and no duration */
                         if ((media.getDuration() == 0 || (media.getTrackCount() != 0 && TextUtils.isEmpty(media.getTrack(0).codec))) &&
                             fileURI.endsWith(".mod")) {
@@ -384,7 +462,7 @@ public class MediaLibrary {
                         MediaWrapper mw = new MediaWrapper(media);
                         media.release();
                         mw.setLastModified(file.lastModified());
-                        mItemList.add(mw);
+                        addItem(mw);
                         // Add this item to database
                         mediaDatabase.addMedia(mw);
                         mItemListLock.writeLock().unlock();
@@ -394,7 +472,11 @@ public class MediaLibrary {
                         return;
                     }
                 }
+                Trace.end("MediaLibrary.scan.parse", phaseStart);
             } finally {
+                // playlists may reference new items
+                invalidatePlaylistsCache();
+
                 // update the video and audio activities
                 for (int i = 0; i < mUpdateHandler.size(); i++) {
                     Handler h = mUpdateHandler.get(i);
@@ -402,6 +484,7 @@ public class MediaLibrary {
                 }
 
                 // remove old files & folders from database if storage is mounted
+                phaseStart = Trace.begin();
                 if (!isStopping && Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
                     for (String fileURI : addedLocations) {
                         existingMedias.remove(fileURI);
@@ -415,6 +498,7 @@ public class MediaLibrary {
                         if (!file.isDirectory())
                             mediaDatabase.removeDir(file.getAbsolutePath());
                 }
+                Trace.end("MediaLibrary.scan.cleanup", phaseStart);
 
                 // hide progressbar in footer
                 if (mBrowser != null && mBrowser.get() != null) {
@@ -423,6 +507,10 @@ public class MediaLibrary {
                 }
 
                 Util.actionScanStop();
+                Trace.end("MediaLibrary.scan", scanStart);
+
+                if (BuildConfig.DEBUG)
+                    Log.d(TAG, "Database write lock waits:\n" + mediaDatabase.getLockWaitStats());
 
                 if (mRestart) {
                     Log.d(TAG, "Restarting scan");
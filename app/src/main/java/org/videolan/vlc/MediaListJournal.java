@@ -0,0 +1,406 @@
+/*****************************************************************************
+ * MediaListJournal.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Append-only journal of a {@link MediaWrapperList}.
+ *
+ * Every add/remove/move event of the list is appended as a small binary record, so saving
+ * the play queue costs O(change). The journal is rewritten as a single snapshot record once
+ * it holds more records than the list has items. Clearing the list is not written right away:
+ * the next change replaces the journal by a snapshot, so that reloading the list (clear then
+ * add) is written as a single operation. An empty list is only written on {@link #close()}.
+ * The previous content is kept until the first change of the list, so it can still be
+ * {@link #read()} to restore the last play queue.
+ * All file accesses are done in order on a single background thread.
+ *
+ * File layout: MAGIC, VERSION, then records of the form
+ * OP_ADD index count (mrl)*count | OP_REMOVE count (index)*count | OP_MOVE from to
+ */
+public class MediaListJournal implements MediaWrapperList.EventListener {
+    public final static String TAG = "VLC/MediaListJournal";
+
+    private static final int MAGIC = 0x564c4351; // "VLCQ"
+    private static final int VERSION = 1;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_MOVE = 3;
+
+    /* Never compact a journal smaller than this */
+    private static final int COMPACT_MIN_RECORDS = 256;
+
+    private final File mFile;
+    private final MediaWrapperList mList;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /* only accessed from the list event callbacks, the list is modified from the main thread */
+    private int mRecordCount = 0;
+    /* true until the journal has been rewritten from the list content */
+    private boolean mStale = true;
+    /* true if the list has been cleared since the last snapshot */
+    private boolean mCleared = false;
+    private volatile boolean mClosed = false;
+    /* only accessed from mExecutor */
+    private DataOutputStream mOutput = null;
+
+    public MediaListJournal(File file, MediaWrapperList list) {
+        mFile = file;
+        mList = list;
+        mList.addEventListener(this);
+    }
+
+    /**
+     * Stop journaling, the pending writes are still completed in the background.
+     */
+    public void close() {
+        if (mClosed)
+            return;
+        mList.removeEventListener(this);
+        if (mCleared)
+            writeSnapshot(new ArrayList<String>(0));
+        mClosed = true;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeOutput();
+            }
+        });
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Replay the journal.
+     *
+     * @return the saved locations, or null if there is no valid journal or if it is closed
+     */
+    @Nullable
+    public List<String> read() {
+        if (mClosed)
+            return null;
+        try {
+            return mExecutor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    closeOutput();
+                    return replay();
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Failed to read the journal", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void onItemAdded(int index, String mrl) {
+        final ArrayList<String> mrls = new ArrayList<String>(1);
+        mrls.add(mrl);
+        appendAdd(index, mrls);
+    }
+
+    @Override
+    public void onItemsAdded(int index, int count) {
+        final ArrayList<String> mrls = new ArrayList<String>(count);
+        for (int i = 0; i < count; ++i)
+            mrls.add(mList.getMRL(index + i));
+        appendAdd(index, mrls);
+    }
+
+    @Override
+    public void onItemRemoved(int index, String mrl) {
+        appendRemove(new int[] { index });
+    }
+
+    @Override
+    public void onItemsRemoved(int[] indexes) {
+        appendRemove(indexes);
+    }
+
+    @Override
+    public void onItemMoved(final int indexBefore, final int indexAfter, String mrl) {
+        if (compactIfNeeded())
+            return;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final DataOutputStream out = getOutput();
+                    out.writeByte(OP_MOVE);
+                    out.writeInt(indexBefore);
+                    out.writeInt(indexAfter);
+                    out.flush();
+                } catch (IOException e) {
+                    onWriteError(e);
+                }
+            }
+        });
+    }
+
+    private void appendAdd(final int index, final List<String> mrls) {
+        if (compactIfNeeded())
+            return;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final DataOutputStream out = getOutput();
+                    writeAdd(out, index, mrls);
+                    out.flush();
+                } catch (IOException e) {
+                    onWriteError(e);
+                }
+            }
+        });
+    }
+
+    private void appendRemove(final int[] indexes) {
+        if (mList.size() == 0) {
+            /* The list has been cleared, the next change writes a snapshot */
+            mStale = true;
+            mCleared = true;
+            return;
+        }
+        if (compactIfNeeded())
+            return;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final DataOutputStream out = getOutput();
+                    out.writeByte(OP_REMOVE);
+                    out.writeInt(indexes.length);
+                    for (int index : indexes)
+                        out.writeInt(index);
+                    out.flush();
+                } catch (IOException e) {
+                    onWriteError(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called from the list callbacks, the list already contains the change being notified.
+     *
+     * @return true if the journal has been replaced by a snapshot of the list
+     */
+    private boolean compactIfNeeded() {
+        if (mStale) {
+            /* The file still holds the previous session queue */
+            writeSnapshot(mList.getMRLs());
+            return true;
+        }
+        if (++mRecordCount < COMPACT_MIN_RECORDS || mRecordCount <= mList.size())
+            return false;
+        writeSnapshot(mList.getMRLs());
+        return true;
+    }
+
+    private void writeSnapshot(final List<String> mrls) {
+        mRecordCount = mrls.isEmpty() ? 0 : 1;
+        mStale = false;
+        mCleared = false;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeOutput();
+                final File tmpFile = new File(mFile.getPath() + ".tmp");
+                DataOutputStream out = null;
+                try {
+                    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+                    writeHeader(out);
+                    if (!mrls.isEmpty())
+                        writeAdd(out, 0, mrls);
+                    out.close();
+                    out = null;
+                    if (!tmpFile.renameTo(mFile))
+                        Log.e(TAG, "Failed to replace " + mFile);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to compact the journal", e);
+                } finally {
+                    if (out != null)
+                        try {
+                            out.close();
+                        } catch (IOException ignored) {}
+                }
+            }
+        });
+    }
+
+    /*
+     * Executor side
+     */
+
+    private DataOutputStream getOutput() throws IOException {
+        if (mOutput == null) {
+            final boolean exists = mFile.length() > 0;
+            mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, exists)));
+            if (!exists)
+                writeHeader(mOutput);
+        }
+        return mOutput;
+    }
+
+    private void closeOutput() {
+        if (mOutput == null)
+            return;
+        try {
+            mOutput.close();
+        } catch (IOException ignored) {}
+        mOutput = null;
+    }
+
+    private void onWriteError(IOException e) {
+        Log.e(TAG, "Failed to write the journal", e);
+        closeOutput();
+        /* The journal is not consistent anymore */
+        mFile.delete();
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    private static void writeAdd(DataOutputStream out, int index, List<String> mrls) throws IOException {
+        out.writeByte(OP_ADD);
+        out.writeInt(index);
+        out.writeInt(mrls.size());
+        for (String mrl : mrls) {
+            final byte[] bytes = mrl.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private List<String> replay() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile), 64 * 1024));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            final ArrayList<String> mrls = new ArrayList<String>();
+            byte[] buffer = new byte[256];
+            try {
+                while (true) {
+                    final int op = in.read();
+                    if (op == -1)
+                        break;
+                    /* records are fully read before being applied, so that a truncated
+                     * record can be dropped */
+                    switch (op) {
+                        case OP_ADD: {
+                            final int index = in.readInt();
+                            final int count = in.readInt();
+                            if (index < 0 || index > mrls.size() || count < 0)
+                                return corrupted(mrls);
+                            final ArrayList<String> added = new ArrayList<String>(count);
+                            for (int i = 0; i < count; ++i) {
+                                final int length = in.readInt();
+                                if (length < 0)
+                                    return corrupted(mrls);
+                                if (length > buffer.length)
+                                    buffer = new byte[length];
+                                in.readFully(buffer, 0, length);
+                                added.add(new String(buffer, 0, length, "UTF-8"));
+                            }
+                            mrls.addAll(index, added);
+                            break;
+                        }
+                        case OP_REMOVE: {
+                            final int count = in.readInt();
+                            if (count < 0 || count > mrls.size())
+                                return corrupted(mrls);
+                            final int[] indexes = new int[count];
+                            for (int i = 0; i < count; ++i) {
+                                indexes[i] = in.readInt();
+                                if (indexes[i] >= mrls.size() || (i > 0 ? indexes[i] <= indexes[i - 1] : indexes[i] < 0))
+                                    return corrupted(mrls);
+                            }
+                            /* compact the kept items in a single pass */
+                            int j = 0, k = 0;
+                            for (int i = 0; i < mrls.size(); ++i) {
+                                if (k < count && indexes[k] == i)
+                                    ++k;
+                                else
+                                    mrls.set(j++, mrls.get(i));
+                            }
+                            mrls.subList(j, mrls.size()).clear();
+                            break;
+                        }
+                        case OP_MOVE: {
+                            final int from = in.readInt();
+                            final int to = in.readInt();
+                            if (from < 0 || from >= mrls.size() || to < 0 || to > mrls.size())
+                                return corrupted(mrls);
+                            final String mrl = mrls.remove(from);
+                            mrls.add(from >= to ? to : to - 1, mrl);
+                            break;
+                        }
+                        default:
+                            return corrupted(mrls);
+                    }
+                }
+            } catch (EOFException e) {
+                Log.w(TAG, "Dropping truncated record after " + mrls.size() + " items");
+            }
+            return mrls;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read the journal", e);
+            return null;
+        } finally {
+            if (in != null)
+                try {
+                    in.close();
+                } catch (IOException ignored) {}
+        }
+    }
+
+    private static List<String> corrupted(List<String> mrls) {
+        Log.w(TAG, "Corrupted journal after " + mrls.size() + " items");
+        return null;
+    }
+}
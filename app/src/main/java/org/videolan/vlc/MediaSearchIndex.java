@@ -0,0 +1,298 @@
+/*****************************************************************************
+ * MediaSearchIndex.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import org.videolan.libvlc.util.AndroidUtil;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * In-memory inverted index of the media library.
+ *
+ * Title, artist, album, album artist and genre are split in lowercase, accent-folded words,
+ * each word pointing to the ids of the media containing it. Words are kept sorted so that a
+ * query word matches all the indexed words it is a prefix of.
+ *
+ * The index is guarded by the MediaLibrary item list lock: modifications are done with the
+ * write lock, searches with the read lock, and are serialized on the index since they share
+ * scratch arrays.
+ */
+public class MediaSearchIndex {
+    public final static String TAG = "VLC/MediaSearchIndex";
+
+    private static final int RANK_TITLE_PREFIX = 0;
+    private static final int RANK_TITLE_WORD = 1;
+    private static final int RANK_OTHER = 2;
+
+    private static class Entry {
+        final MediaWrapper media;
+        final String title;
+        /* distinct words, the title ones first */
+        final String[] words;
+        final int titleWords;
+
+        Entry(MediaWrapper media, String title, String[] words, int titleWords) {
+            this.media = media;
+            this.title = title;
+            this.words = words;
+            this.titleWords = titleWords;
+        }
+    }
+
+    private static class Match {
+        final Entry entry;
+        final int rank;
+
+        Match(Entry entry, int rank) {
+            this.entry = entry;
+            this.rank = rank;
+        }
+    }
+
+    private static final Comparator<Match> sMatchComparator = new Comparator<Match>() {
+        @Override
+        public int compare(Match lhs, Match rhs) {
+            final int diff = lhs.rank - rhs.rank;
+            return diff != 0 ? diff : lhs.entry.title.compareTo(rhs.entry.title);
+        }
+    };
+
+    /**
+     * Growable array of media ids
+     */
+    private static class IdList {
+        int[] ids = new int[2];
+        int size = 0;
+
+        void add(int id) {
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        void remove(int id) {
+            for (int i = 0; i < size; ++i) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    private final TreeMap<String, IdList> mWords = new TreeMap<String, IdList>();
+    private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+    private final HashMap<String, Integer> mIds = new HashMap<String, Integer>();
+    private final ArrayList<Integer> mFreeIds = new ArrayList<Integer>();
+
+    /* Search scratch arrays, indexed by id */
+    private int[] mStamps = new int[0];
+    private int[] mCounts = new int[0];
+    private int mStamp = 0;
+
+    public void add(MediaWrapper media) {
+        final String location = media.getLocation();
+        if (mIds.containsKey(location))
+            remove(location);
+
+        final LinkedHashSet<String> words = new LinkedHashSet<String>();
+        final String title = normalize(media.getTitle());
+        splitWords(title, words);
+        final int titleWords = words.size();
+        splitWords(normalize(media.getArtist()), words);
+        splitWords(normalize(media.getAlbum()), words);
+        splitWords(normalize(media.getAlbumArtist()), words);
+        splitWords(normalize(media.getGenre()), words);
+
+        final Entry entry = new Entry(media, title, words.toArray(new String[words.size()]), titleWords);
+        final int id;
+        if (mFreeIds.isEmpty()) {
+            id = mEntries.size();
+            mEntries.add(entry);
+        } else {
+            id = mFreeIds.remove(mFreeIds.size() - 1);
+            mEntries.set(id, entry);
+        }
+        mIds.put(location, id);
+
+        for (String word : entry.words) {
+            IdList ids = mWords.get(word);
+            if (ids == null) {
+                ids = new IdList();
+                mWords.put(word, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    public void remove(String location) {
+        final Integer id = mIds.remove(location);
+        if (id == null)
+            return;
+        final Entry entry = mEntries.get(id);
+        for (String word : entry.words) {
+            final IdList ids = mWords.get(word);
+            ids.remove(id);
+            if (ids.size == 0)
+                mWords.remove(word);
+        }
+        mEntries.set(id, null);
+        mFreeIds.add(id);
+    }
+
+    public void clear() {
+        mWords.clear();
+        mEntries.clear();
+        mIds.clear();
+        mFreeIds.clear();
+    }
+
+    public int size() {
+        return mIds.size();
+    }
+
+    /**
+     * Find the media matching all the words of query, each query word being a prefix of a
+     * word of the media. Media whose title starts with the query come first, then media with
+     * a title word starting with the first query word, then the other matches.
+     *
+     * @param query the user query
+     * @param limit maximum number of results
+     * @return the matching media, ranked
+     */
+    public synchronized ArrayList<MediaWrapper> search(String query, int limit) {
+        final String normalizedQuery = normalize(query);
+        final LinkedHashSet<String> querySet = new LinkedHashSet<String>();
+        splitWords(normalizedQuery, querySet);
+        final ArrayList<MediaWrapper> results = new ArrayList<MediaWrapper>();
+        if (querySet.isEmpty() || limit <= 0)
+            return results;
+        final String[] queryWords = querySet.toArray(new String[querySet.size()]);
+
+        if (mStamps.length < mEntries.size()) {
+            mStamps = new int[mEntries.size()];
+            mCounts = new int[mEntries.size()];
+        }
+        final int stamp = ++mStamp;
+        final ArrayList<Integer> candidates = new ArrayList<Integer>();
+
+        /* Count for each media the number of query words it matches, in order: a media
+         * is only counted for word i if it matched the i - 1 previous ones */
+        for (int i = 0; i < queryWords.length; ++i) {
+            for (IdList ids : prefixMatches(queryWords[i]).values()) {
+                for (int j = 0; j < ids.size; ++j) {
+                    final int id = ids.ids[j];
+                    if (i == 0) {
+                        if (mStamps[id] != stamp) {
+                            mStamps[id] = stamp;
+                            mCounts[id] = 1;
+                            candidates.add(id);
+                        }
+                    } else if (mStamps[id] == stamp && mCounts[id] == i)
+                        mCounts[id] = i + 1;
+                }
+            }
+        }
+
+        final String trimmedQuery = normalizedQuery.trim();
+        final String firstWord = queryWords[0];
+        final ArrayList<Match> matches = new ArrayList<Match>();
+        for (int id : candidates) {
+            if (mCounts[id] == queryWords.length) {
+                final Entry entry = mEntries.get(id);
+                matches.add(new Match(entry, rank(entry, trimmedQuery, firstWord)));
+            }
+        }
+        Collections.sort(matches, sMatchComparator);
+
+        for (int i = 0; i < matches.size() && i < limit; ++i)
+            results.add(matches.get(i).entry.media);
+        return results;
+    }
+
+    private SortedMap<String, IdList> prefixMatches(String prefix) {
+        return mWords.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    private static int rank(Entry entry, String query, String firstWord) {
+        if (entry.title.startsWith(query))
+            return RANK_TITLE_PREFIX;
+        for (int i = 0; i < entry.titleWords; ++i)
+            if (entry.words[i].startsWith(firstWord))
+                return RANK_TITLE_WORD;
+        return RANK_OTHER;
+    }
+
+    private static void splitWords(String text, Collection<String> words) {
+        if (text == null)
+            return;
+        int start = -1;
+        for (int i = 0; i <= text.length(); ++i) {
+            final boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start == -1)
+                start = i;
+            else if (!letter && start != -1) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Lowercase and, when available, remove the accents of a text.
+     */
+    static String normalize(String text) {
+        if (text == null)
+            return null;
+        text = text.toLowerCase(Locale.getDefault());
+        return AndroidUtil.isGingerbreadOrLater() ? foldAccents(text) : text;
+    }
+
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    static String foldAccents(String text) {
+        boolean ascii = true;
+        for (int i = 0; i < text.length() && ascii; ++i)
+            ascii = text.charAt(i) < 0x80;
+        if (ascii)
+            return text;
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        final StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); ++i) {
+            final char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK)
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -24,7 +24,25 @@ import android.net.Uri;
 import android.support.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * The play queue.
+ *
+ * Reads are guarded by a read lock and can be done from any thread. Modifications are
+ * serialized on the list monitor and events are dispatched once it has been released, so
+ * listeners can read the list from their callbacks. Modifications are expected from a single
+ * thread, otherwise the events of concurrent ones may be received out of order. Bulk operations
+ * ({@link #addAll(List)}, {@link #removeAll(Collection)} and {@link #clear()}) only send
+ * a single batch event.
+ */
 public class MediaWrapperList {
     private static final String TAG = "VLC/MediaWrapperList";
 
@@ -32,58 +50,155 @@ public class MediaWrapperList {
         void onItemAdded(int index, String mrl);
         void onItemRemoved(int index, String mrl);
         void onItemMoved(int indexBefore, int indexAfter, String mrl);
+        /**
+         * @param index position of the first added item
+         * @param count number of contiguous items added
+         */
+        void onItemsAdded(int index, int count);
+        /**
+         * @param indexes positions of the removed items before the removal, in ascending order
+         */
+        void onItemsRemoved(int[] indexes);
     }
 
-    private static final int EVENT_ADDED = 0;
-    private static final int EVENT_REMOVED = 1;
-    private static final int EVENT_MOVED = 2;
-
-    /* TODO: add locking */
-    private ArrayList<MediaWrapper> mInternalList;
-    private ArrayList<EventListener> mEventListenerList;
+    private final ArrayList<MediaWrapper> mInternalList;
+    /* location -> ascending positions in mInternalList */
+    private final HashMap<String, ArrayList<Integer>> mLocationIndex;
+    private final ReadWriteLock mLock;
+    private final CopyOnWriteArrayList<EventListener> mEventListenerList;
 
     public MediaWrapperList() {
-        mEventListenerList = new ArrayList<EventListener>();
+        mEventListenerList = new CopyOnWriteArrayList<EventListener>();
         mInternalList = new ArrayList<MediaWrapper>();
+        mLocationIndex = new HashMap<String, ArrayList<Integer>>();
+        mLock = new ReentrantReadWriteLock();
     }
 
-    public void add(MediaWrapper media) {
-        mInternalList.add(media);
+    public void addEventListener(EventListener listener) {
+        mEventListenerList.addIfAbsent(listener);
     }
 
-    public synchronized void addEventListener(EventListener listener) {
-        if (!mEventListenerList.contains(listener))
-            mEventListenerList.add(listener);
+    public void removeEventListener(EventListener listener) {
+        mEventListenerList.remove(listener);
     }
 
-    public synchronized void removeEventListener(EventListener listener) {
-        mEventListenerList.remove(listener);
+    /*
+     * Index helpers, must be called with the write lock held
+     */
+
+    private void indexAppend(MediaWrapper media, int position) {
+        final String location = media.getLocation();
+        ArrayList<Integer> positions = mLocationIndex.get(location);
+        if (positions == null) {
+            positions = new ArrayList<Integer>(1);
+            mLocationIndex.put(location, positions);
+        }
+        positions.add(position);
+    }
+
+    private void rebuildIndex() {
+        mLocationIndex.clear();
+        for (int i = 0; i < mInternalList.size(); ++i)
+            indexAppend(mInternalList.get(i), i);
+    }
+
+    /* Add delta to the indexed positions from position, the list of each location stays sorted */
+    private void shiftIndex(int position, int delta) {
+        for (ArrayList<Integer> positions : mLocationIndex.values()) {
+            for (int i = positions.size() - 1; i >= 0; --i) {
+                final int p = positions.get(i);
+                if (p < position)
+                    break;
+                positions.set(i, p + delta);
+            }
+        }
+    }
+
+    /* The list must already contain media at position */
+    private void indexInsert(MediaWrapper media, int position) {
+        shiftIndex(position, 1);
+        final String location = media.getLocation();
+        ArrayList<Integer> positions = mLocationIndex.get(location);
+        if (positions == null) {
+            positions = new ArrayList<Integer>(1);
+            mLocationIndex.put(location, positions);
+        }
+        final int i = Collections.binarySearch(positions, position);
+        positions.add(i < 0 ? -i - 1 : i, position);
+    }
+
+    private void indexRemove(MediaWrapper media, int position) {
+        final String location = media.getLocation();
+        final ArrayList<Integer> positions = mLocationIndex.get(location);
+        if (positions != null) {
+            final int i = Collections.binarySearch(positions, position);
+            if (i >= 0)
+                positions.remove(i);
+            if (positions.isEmpty())
+                mLocationIndex.remove(location);
+        }
+        shiftIndex(position + 1, -1);
     }
 
-    private synchronized void signalEventListeners(int event, int arg1, int arg2, String mrl) {
-        for (EventListener listener : mEventListenerList) {
-            switch (event) {
-            case EVENT_ADDED:
-                listener.onItemAdded(arg1, mrl);
-                break;
-            case EVENT_REMOVED:
-                listener.onItemRemoved(arg1, mrl);
-                break;
-            case EVENT_MOVED:
-                listener.onItemMoved(arg1, arg2, mrl);
-                break;
+    /**
+     * Append a media, without notifying the listeners.
+     */
+    public void add(MediaWrapper media) {
+        synchronized (this) {
+            mLock.writeLock().lock();
+            try {
+                final int index = mInternalList.size();
+                mInternalList.add(media);
+                indexAppend(media, index);
+            } finally {
+                mLock.writeLock().unlock();
             }
         }
     }
 
+    /**
+     * Append several media at once, listeners get a single {@link EventListener#onItemsAdded} call.
+     */
+    public void addAll(List<MediaWrapper> mediaList) {
+        if (mediaList.isEmpty())
+            return;
+        final int index;
+        synchronized (this) {
+            mLock.writeLock().lock();
+            try {
+                index = mInternalList.size();
+                mInternalList.addAll(mediaList);
+                for (int i = 0; i < mediaList.size(); ++i)
+                    indexAppend(mediaList.get(i), index + i);
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+        for (EventListener listener : mEventListenerList)
+            listener.onItemsAdded(index, mediaList.size());
+    }
+
     /**
      * Clear the media list. (remove all media)
      */
     public void clear() {
-        // Signal to observers of media being deleted.
-        for(int i = 0; i < mInternalList.size(); i++)
-            signalEventListeners(EVENT_REMOVED, i, -1, mInternalList.get(i).getLocation());
-        mInternalList.clear();
+        final int[] indexes;
+        synchronized (this) {
+            mLock.writeLock().lock();
+            try {
+                indexes = new int[mInternalList.size()];
+                for (int i = 0; i < indexes.length; ++i)
+                    indexes[i] = i;
+                mInternalList.clear();
+                mLocationIndex.clear();
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+        if (indexes.length == 0)
+            return;
+        for (EventListener listener : mEventListenerList)
+            listener.onItemsRemoved(indexes);
     }
 
     private boolean isValid(int position) {
@@ -94,8 +209,17 @@ public class MediaWrapperList {
         insert(position, new MediaWrapper(uri));
     }
     public void insert(int position, MediaWrapper media) {
-        mInternalList.add(position, media);
-        signalEventListeners(EVENT_ADDED, position, -1, media.getLocation());
+        synchronized (this) {
+            mLock.writeLock().lock();
+            try {
+                mInternalList.add(position, media);
+                indexInsert(media, position);
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+        for (EventListener listener : mEventListenerList)
+            listener.onItemAdded(position, media.getLocation());
     }
 
     /**
@@ -106,47 +230,148 @@ public class MediaWrapperList {
      * @throws IndexOutOfBoundsException
      */
     public void move(int startPosition, int endPosition) {
-        if (!(isValid(startPosition)
-              && endPosition >= 0 && endPosition <= mInternalList.size()))
-            throw new IndexOutOfBoundsException("Indexes out of range");
+        final MediaWrapper toMove;
+        synchronized (this) {
+            mLock.writeLock().lock();
+            try {
+                if (!(isValid(startPosition)
+                      && endPosition >= 0 && endPosition <= mInternalList.size()))
+                    throw new IndexOutOfBoundsException("Indexes out of range");
 
-        MediaWrapper toMove = mInternalList.get(startPosition);
-        mInternalList.remove(startPosition);
-        if (startPosition >= endPosition)
-            mInternalList.add(endPosition, toMove);
-        else
-            mInternalList.add(endPosition - 1, toMove);
-        signalEventListeners(EVENT_MOVED, startPosition, endPosition, toMove.getLocation());
+                toMove = mInternalList.remove(startPosition);
+                indexRemove(toMove, startPosition);
+                final int position = startPosition >= endPosition ? endPosition : endPosition - 1;
+                mInternalList.add(position, toMove);
+                indexInsert(toMove, position);
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+        for (EventListener listener : mEventListenerList)
+            listener.onItemMoved(startPosition, endPosition, toMove.getLocation());
     }
 
     public void remove(int position) {
-        if (!isValid(position))
-            return;
-        String uri = mInternalList.get(position).getLocation();
-        mInternalList.remove(position);
-        signalEventListeners(EVENT_REMOVED, position, -1, uri);
+        final String location;
+        synchronized (this) {
+            mLock.writeLock().lock();
+            try {
+                if (!isValid(position))
+                    return;
+                final MediaWrapper media = mInternalList.remove(position);
+                indexRemove(media, position);
+                location = media.getLocation();
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+        for (EventListener listener : mEventListenerList)
+            listener.onItemRemoved(position, location);
     }
 
+    /**
+     * Remove all the occurrences of a location.
+     */
     public void remove(String location) {
-        for (int i = 0; i < mInternalList.size(); ++i) {
-            String uri = mInternalList.get(i).getLocation();
-            if (uri.equals(location)) {
-                mInternalList.remove(i);
-                signalEventListeners(EVENT_REMOVED, i, -1, uri);
-                i--;
+        final HashSet<String> locations = new HashSet<String>(1);
+        locations.add(location);
+        removeAll(locations);
+    }
+
+    /**
+     * Remove all the occurrences of the given locations, listeners get a single
+     * {@link EventListener#onItemsRemoved} call.
+     */
+    public void removeAll(Collection<String> locations) {
+        final int[] indexes;
+        synchronized (this) {
+            mLock.writeLock().lock();
+            try {
+                final boolean[] removed = new boolean[mInternalList.size()];
+                int count = 0;
+                for (String location : locations) {
+                    final ArrayList<Integer> positions = mLocationIndex.get(location);
+                    if (positions == null)
+                        continue;
+                    for (int position : positions) {
+                        if (!removed[position]) {
+                            removed[position] = true;
+                            ++count;
+                        }
+                    }
+                }
+                if (count == 0)
+                    return;
+
+                /* Compact the list in a single pass */
+                indexes = new int[count];
+                int j = 0, k = 0;
+                for (int i = 0; i < removed.length; ++i) {
+                    if (removed[i])
+                        indexes[k++] = i;
+                    else
+                        mInternalList.set(j++, mInternalList.get(i));
+                }
+                mInternalList.subList(j, removed.length).clear();
+                rebuildIndex();
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+        for (EventListener listener : mEventListenerList)
+            listener.onItemsRemoved(indexes);
+    }
+
+    /**
+     * Replace all the occurrences of a location by another MediaWrapper of the same location.
+     * No event is sent since the content of the list does not change.
+     */
+    public void replace(MediaWrapper media) {
+        synchronized (this) {
+            mLock.writeLock().lock();
+            try {
+                final ArrayList<Integer> positions = mLocationIndex.get(media.getLocation());
+                if (positions == null)
+                    return;
+                for (int position : positions)
+                    mInternalList.set(position, media);
+            } finally {
+                mLock.writeLock().unlock();
             }
         }
     }
 
     public int size() {
-        return mInternalList.size();
+        mLock.readLock().lock();
+        try {
+            return mInternalList.size();
+        } finally {
+            mLock.readLock().unlock();
+        }
     }
 
     @Nullable
     public MediaWrapper getMedia(int position) {
-        if (!isValid(position))
-            return null;
-        return mInternalList.get(position);
+        mLock.readLock().lock();
+        try {
+            if (!isValid(position))
+                return null;
+            return mInternalList.get(position);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the list content
+     */
+    public ArrayList<MediaWrapper> getMedias() {
+        mLock.readLock().lock();
+        try {
+            return new ArrayList<MediaWrapper>(mInternalList);
+        } finally {
+            mLock.readLock().unlock();
+        }
     }
 
     /**
@@ -154,20 +379,67 @@ public class MediaWrapperList {
      * @return null if not found
      */
     public String getMRL(int position) {
-        if (!isValid(position))
-            return null;
-        return mInternalList.get(position).getLocation();
+        mLock.readLock().lock();
+        try {
+            if (!isValid(position))
+                return null;
+            return mInternalList.get(position).getLocation();
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the locations of the list
+     */
+    public ArrayList<String> getMRLs() {
+        mLock.readLock().lock();
+        try {
+            final ArrayList<String> locations = new ArrayList<String>(mInternalList.size());
+            for (MediaWrapper media : mInternalList)
+                locations.add(media.getLocation());
+            return locations;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String location) {
+        mLock.readLock().lock();
+        try {
+            return mLocationIndex.containsKey(location);
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the position of the first occurrence of location, -1 if not found
+     */
+    public int indexOf(String location) {
+        mLock.readLock().lock();
+        try {
+            final ArrayList<Integer> positions = mLocationIndex.get(location);
+            return positions != null ? positions.get(0) : -1;
+        } finally {
+            mLock.readLock().unlock();
+        }
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("LibVLC Media List: {");
-        for(int i = 0; i < size(); i++) {
-            sb.append(((Integer)i).toString());
-            sb.append(": ");
-            sb.append(getMRL(i));
-            sb.append(", ");
+        mLock.readLock().lock();
+        try {
+            for (int i = 0; i < mInternalList.size(); i++) {
+                sb.append(((Integer) i).toString());
+                sb.append(": ");
+                sb.append(mInternalList.get(i).getLocation());
+                sb.append(", ");
+            }
+        } finally {
+            mLock.readLock().unlock();
         }
         sb.append("}");
         return sb.toString();
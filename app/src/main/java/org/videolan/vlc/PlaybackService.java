@@ -54,6 +54,7 @@ import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.NotificationManagerCompat;
 import android.telephony.TelephonyManager;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.View;
 import android.widget.RemoteViews;
 import android.widget.Toast;
@@ -68,6 +69,7 @@ import org.videolan.vlc.gui.AudioPlayerContainerActivity;
 import org.videolan.vlc.gui.MainActivity;
 import org.videolan.vlc.gui.audio.AudioUtil;
 import org.videolan.vlc.gui.video.VideoPlayerActivity;
+import org.videolan.vlc.util.Trace;
 import org.videolan.vlc.util.Util;
 import org.videolan.vlc.util.VLCInstance;
 import org.videolan.vlc.util.VLCOptions;
@@ -79,16 +81,27 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Random;
 import java.util.Stack;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 public class PlaybackService extends Service implements IVLCVout.Callback {
 
     private static final String TAG = "VLC/PlaybackService";
 
+    private static final String MEDIA_LIST_JOURNAL = "media_list.journal";
+    /* number of media resolved on each side of the current one when restoring the queue */
+    private static final int RESTORE_WINDOW = 3;
+    private static final int RESTORE_BULK_THRESHOLD = 50;
+    private static final long SHUTDOWN_FLUSH_TIMEOUT = 1000; // ms
+    private static final Pattern SCHEME_PATTERN = Pattern.compile("\\w+://.+");
+
     private static final int SHOW_PROGRESS = 0;
     private static final int SHOW_TOAST = 1;
     public static final String START_FROM_NOTIFICATION = "from_notification";
@@ -125,6 +138,11 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
 
     private final IBinder mBinder = new LocalBinder();
     private MediaWrapperList mMediaList = new MediaWrapperList();
+    private MediaListJournal mMediaListJournal;
+    /* Incremented on each load() of the media list, from the main thread */
+    private int mMediaListGeneration = 0;
+    /* Resolves the media of a restored play queue in the background */
+    private final ExecutorService mRestoreExecutor = Executors.newSingleThreadExecutor();
     private MediaPlayer mMediaPlayer;
     private boolean mIsAudioTrack = false;
     private boolean mHasHdmiAudio = false;
@@ -162,6 +180,17 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
      * Last widget position update timestamp
      */
     private long mWidgetPositionTimestamp = Calendar.getInstance().getTimeInMillis();
+
+    /* Tracks, titles and chapters of the current media, read from the player on first use.
+     * Cleared on media change, the tracks of a type on its ESAdded and ESDeleted events,
+     * titles and chapters on every ES or vout change. */
+    private MediaPlayer.TrackDescription[] mAudioTracks = null;
+    private MediaPlayer.TrackDescription[] mSpuTracks = null;
+    private boolean mAudioTracksLoaded = false, mSpuTracksLoaded = false;
+    private int mAudioTracksCount = -1, mVideoTracksCount = -1, mSpuTracksCount = -1;
+    private MediaPlayer.Title[] mTitles = null;
+    private boolean mTitlesLoaded = false;
+    private final SparseArray<MediaPlayer.Chapter[]> mChapters = new SparseArray<MediaPlayer.Chapter[]>();
     private ComponentName mRemoteControlClientReceiverComponent;
 
     private static LibVLC LibVLC() {
@@ -210,6 +239,7 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
         mPrevIndex = -1;
         mNextIndex = -1;
         mPrevious = new Stack<Integer>();
+        mMediaListJournal = new MediaListJournal(new File(getFilesDir(), MEDIA_LIST_JOURNAL), mMediaList);
         mRemoteControlClientReceiverComponent = new ComponentName(BuildConfig.APPLICATION_ID,
                 RemoteControlClientReceiver.class.getName());
 
@@ -306,6 +336,12 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
     public void onDestroy() {
         super.onDestroy();
         stop();
+        if (mMediaListJournal != null)
+            mMediaListJournal.close();
+        /* Drop the restore results still to come, they would change the list of a dead service */
+        ++mMediaListGeneration;
+        mRestoreExecutor.shutdownNow();
+        MediaDatabase.getInstance().flushUpdates(SHUTDOWN_FLUSH_TIMEOUT);
         if (mWakeLock.isHeld())
             mWakeLock.release();
         unregisterReceiver(mReceiver);
@@ -585,8 +621,10 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
                 case Media.Event.ParsedChanged:
                     Log.i(TAG, "Media.Event.ParsedChanged");
                     final MediaWrapper mw = getCurrentMedia();
-                    if (mw != null)
+                    if (mw != null) {
                         mw.updateMeta(mMediaPlayer);
+                        MediaLibrary.getInstance().reindexMediaItem(mw);
+                    }
                     executeUpdate();
                     showNotification();
                     updateRemoteControlClientMetadata();
@@ -676,8 +714,10 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
                     updateWidgetPosition(event.getPositionChanged());
                     break;
                 case MediaPlayer.Event.Vout:
+                    invalidateTitles();
                     break;
                 case MediaPlayer.Event.ESAdded:
+                    invalidateTracks(event.getEsChangedType());
                     if (event.getEsChangedType() == Media.Track.Type.Video) {
                         if (!handleVout()) {
                             /* Update notification content intent: resume video or resume audio activity */
@@ -686,6 +726,7 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
                     }
                     break;
                 case MediaPlayer.Event.ESDeleted:
+                    invalidateTracks(event.getEsChangedType());
                     break;
             }
             for (Callback callback : mCallbacks)
@@ -747,6 +788,49 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
             determinePrevAndNextIndices();
             executeUpdate();
         }
+
+        @Override
+        public void onItemsAdded(int index, int count) {
+            Log.i(TAG, "CustomMediaListItemsAdded: " + count);
+            if(mCurrentIndex >= index && !mExpanding.get())
+                mCurrentIndex += count;
+
+            determinePrevAndNextIndices();
+            executeUpdate();
+        }
+
+        @Override
+        public void onItemsRemoved(int[] indexes) {
+            Log.i(TAG, "CustomMediaListItemsDeleted: " + indexes.length);
+            if (!mExpanding.get()) {
+                int removedBefore = 0;
+                boolean currentRemoved = false;
+                for (int index : indexes) {
+                    if (index < mCurrentIndex)
+                        removedBefore++;
+                    else if (index == mCurrentIndex)
+                        currentRemoved = true;
+                    else
+                        break;
+                }
+                mCurrentIndex -= removedBefore;
+                // Stored previous tracks may point to removed items
+                mPrevious.clear();
+                if (currentRemoved) {
+                    // The current item has been deleted
+                    mCurrentIndex--;
+                    determinePrevAndNextIndices();
+                    if (mNextIndex != -1)
+                        next();
+                    else if (mCurrentIndex != -1)
+                        playIndex(mCurrentIndex, 0);
+                    else
+                        stop();
+                }
+            }
+            determinePrevAndNextIndices();
+            executeUpdate();
+        }
     };
 
     public boolean canSwitchToVideo() {
@@ -1001,6 +1085,7 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
             mMediaPlayer.stop();
             mMediaPlayer.setMedia(null);
             media.release();
+            invalidateTracks(Media.Track.Type.Unknown);
         }
         mMediaList.removeEventListener(mListEventListener);
         setRemoteControlClientPlaybackState(MediaPlayer.Event.Stopped);
@@ -1132,7 +1217,6 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
     }
 
     private void onMediaListChanged() {
-        saveMediaList();
         executeUpdate();
         determinePrevAndNextIndices();
     }
@@ -1261,23 +1345,27 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
         String currentMedia = prefs.getString("current_media", "");
         if (currentMedia.equals(""))
             return;
-        String[] locations = prefs.getString("media_list", "").split(" ");
-
-        List<String> mediaPathList = new ArrayList<String>(locations.length);
-        for (int i = 0 ; i < locations.length ; ++i)
-            mediaPathList.add(Uri.decode(locations[i]));
+        List<String> mediaPathList = mMediaListJournal.read();
+        if (mediaPathList == null) {
+            /* Queue saved by a previous version */
+            String[] locations = prefs.getString("media_list", "").split(" ");
+            mediaPathList = new ArrayList<String>(locations.length);
+            for (int i = 0 ; i < locations.length ; ++i)
+                mediaPathList.add(Uri.decode(locations[i]));
+        }
 
         mShuffling = prefs.getBoolean("shuffling", false);
         mRepeating = RepeatType.values()[prefs.getInt("repeating", RepeatType.None.ordinal())];
         int position = prefs.getInt("position_in_list", Math.max(0, mediaPathList.indexOf(currentMedia)));
         long time = prefs.getLong("position_in_song", -1);
         // load playlist
-        loadLocations(mediaPathList, position);
+        restoreLocations(mediaPathList, position);
         if (time > 0)
             setTime(time);
         SharedPreferences.Editor editor = prefs.edit();
         editor.putInt("position_in_list", 0);
         editor.putLong("position_in_song", 0);
+        editor.remove("media_list");
         Util.commitPreferences(editor);
     }
 
@@ -1289,16 +1377,6 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
         Util.commitPreferences(editor);
     }
 
-    private synchronized void saveMediaList() {
-        StringBuilder locations = new StringBuilder();
-        for (int i = 0; i < mMediaList.size(); i++)
-            locations.append(" ").append(Uri.encode(mMediaList.getMRL(i)));
-        //We save a concatenated String because putStringSet is APIv11.
-        SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(this).edit();
-        editor.putString("media_list", locations.toString().trim());
-        Util.commitPreferences(editor);
-    }
-
     private synchronized void savePosition(){
         SharedPreferences.Editor editor = PreferenceManager.getDefaultSharedPreferences(this).edit();
         editor.putInt("position_in_list", mCurrentIndex);
@@ -1309,7 +1387,7 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
     private boolean validateLocation(String location)
     {
         /* Check if the MRL contains a scheme */
-        if (!location.matches("\\w+://.+"))
+        if (!SCHEME_PATTERN.matcher(location).matches())
             location = "file://".concat(location);
         if (location.toLowerCase(Locale.ENGLISH).startsWith("file://")) {
             /* Ensure the file exists */
@@ -1479,23 +1557,116 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
     @MainThread
     public void loadLocations(List<String> mediaPathList, int position) {
         ArrayList<MediaWrapper> mediaList = new ArrayList<MediaWrapper>();
-        MediaDatabase db = MediaDatabase.getInstance();
 
         for (int i = 0; i < mediaPathList.size(); i++) {
-            String location = mediaPathList.get(i);
-            MediaWrapper mediaWrapper = db.getMedia(Uri.parse(location));
-            if (mediaWrapper == null) {
-                if (!validateLocation(location)) {
-                    Log.w(TAG, "Invalid location " + location);
-                    showToast(getResources().getString(R.string.invalid_location, location), Toast.LENGTH_SHORT);
+            MediaWrapper mediaWrapper = resolveLocation(mediaPathList.get(i));
+            if (mediaWrapper != null)
+                mediaList.add(mediaWrapper);
+        }
+        load(mediaList, position);
+    }
+
+    @Nullable
+    private MediaWrapper resolveLocation(String location) {
+        MediaWrapper mediaWrapper = MediaLibrary.getInstance().getMediaItem(location);
+        if (mediaWrapper == null)
+            mediaWrapper = MediaDatabase.getInstance().getMedia(Uri.parse(location));
+        if (mediaWrapper == null) {
+            if (!validateLocation(location)) {
+                Log.w(TAG, "Invalid location " + location);
+                showToast(getResources().getString(R.string.invalid_location, location), Toast.LENGTH_SHORT);
+                return null;
+            }
+            Log.v(TAG, "Creating on-the-fly Media object for " + location);
+            mediaWrapper = new MediaWrapper(Uri.parse(location));
+        }
+        return mediaWrapper;
+    }
+
+    /**
+     * Restore a saved play queue.
+     *
+     * Only the media around position are resolved and validated before playback starts,
+     * the others are taken from the MediaLibrary or added as bare MediaWrappers, and
+     * resolved in the background.
+     */
+    @MainThread
+    private void restoreLocations(List<String> mediaPathList, int position) {
+        final int start = Math.max(0, position - RESTORE_WINDOW);
+        final int end = Math.min(mediaPathList.size(), position + RESTORE_WINDOW + 1);
+        final MediaLibrary mediaLibrary = MediaLibrary.getInstance();
+        final ArrayList<MediaWrapper> mediaList = new ArrayList<MediaWrapper>(mediaPathList.size());
+        final ArrayList<String> pendingLocations = new ArrayList<String>();
+        int restoredPosition = position;
+
+        for (int i = 0; i < mediaPathList.size(); i++) {
+            final String location = mediaPathList.get(i);
+            MediaWrapper mediaWrapper;
+            if (i >= start && i < end) {
+                mediaWrapper = resolveLocation(location);
+                if (mediaWrapper == null) {
+                    if (i < position)
+                        restoredPosition--;
                     continue;
                 }
-                Log.v(TAG, "Creating on-the-fly Media object for " + location);
-                mediaWrapper = new MediaWrapper(Uri.parse(location));
+            } else {
+                mediaWrapper = mediaLibrary.getMediaItem(location);
+                if (mediaWrapper == null) {
+                    mediaWrapper = new MediaWrapper(Uri.parse(location));
+                    pendingLocations.add(location);
+                }
             }
             mediaList.add(mediaWrapper);
         }
-        load(mediaList, position);
+        load(mediaList, restoredPosition);
+
+        if (!pendingLocations.isEmpty()) {
+            final int generation = mMediaListGeneration;
+            mRestoreExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    resolvePendingLocations(pendingLocations, generation);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param generation mMediaListGeneration of the restored list, the results are dropped if
+     *                   another list has been loaded meanwhile
+     */
+    private void resolvePendingLocations(List<String> locations, final int generation) {
+        final MediaDatabase db = MediaDatabase.getInstance();
+        /* One pass on the media table is faster than a lot of single queries */
+        final HashMap<String, MediaWrapper> dbMedias = locations.size() > RESTORE_BULK_THRESHOLD
+                ? db.getMedias() : null;
+        final ArrayList<MediaWrapper> resolved = new ArrayList<MediaWrapper>();
+        final ArrayList<String> invalid = new ArrayList<String>();
+
+        for (String location : locations) {
+            final MediaWrapper mediaWrapper = dbMedias != null ? dbMedias.get(location)
+                    : db.getMedia(Uri.parse(location));
+            if (mediaWrapper != null)
+                resolved.add(mediaWrapper);
+            else if (!validateLocation(location))
+                invalid.add(location);
+        }
+
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mMediaListGeneration)
+                    return;
+                for (MediaWrapper mediaWrapper : resolved)
+                    mMediaList.replace(mediaWrapper);
+                if (!invalid.isEmpty()) {
+                    Log.w(TAG, "Removing " + invalid.size() + " invalid locations");
+                    showToast(getResources().getString(R.string.invalid_location, invalid.get(0)), Toast.LENGTH_SHORT);
+                    mMediaList.removeAll(invalid);
+                }
+                executeUpdate();
+            }
+        });
     }
 
     @MainThread
@@ -1511,13 +1682,11 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
 
         mMediaList.removeEventListener(mListEventListener);
         mMediaList.clear();
-        MediaWrapperList currentMediaList = mMediaList;
+        ++mMediaListGeneration;
 
         mPrevious.clear();
 
-        for (int i = 0; i < mediaList.size(); i++) {
-            currentMediaList.add(mediaList.get(i));
-        }
+        mMediaList.addAll(mediaList);
 
         if (mMediaList.size() == 0) {
             Log.w(TAG, "Warning: empty media list, nothing to play !");
@@ -1534,7 +1703,6 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
         mMediaList.addEventListener(mListEventListener);
 
         playIndex(mCurrentIndex, 0);
-        saveMediaList();
         onMediaChanged();
     }
 
@@ -1570,11 +1738,13 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
         if (mw == null)
             return;
 
+        final long start = Trace.begin();
         final Media media = new Media(VLCInstance.get(), mw.getUri());
         VLCOptions.setMediaOptions(media, this, flags | mw.getFlags());
         media.setEventListener(mMediaListener);
         mMediaPlayer.setMedia(media);
         media.release();
+        invalidateTracks(Media.Track.Type.Unknown);
         mMediaPlayer.setEqualizer(VLCOptions.getEqualizer(this));
         mMediaPlayer.setVideoTitleDisplay(MediaPlayer.Position.Disable, 0);
         changeAudioFocus(true);
@@ -1583,6 +1753,7 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
 
         notifyTrackChanged();
         determinePrevAndNextIndices();
+        Trace.end("PlaybackService.playIndex", start);
     }
 
     /**
@@ -1625,10 +1796,7 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
             return;
         }
 
-        for (int i = 0; i < mediaList.size(); i++) {
-            MediaWrapper mediaWrapper = mediaList.get(i);
-            mMediaList.add(mediaWrapper);
-        }
+        mMediaList.addAll(mediaList);
         onMediaListChanged();
     }
 
@@ -1645,7 +1813,6 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
     @MainThread
     public void moveItem(int positionStart, int positionEnd) {
         mMediaList.move(positionStart, positionEnd);
-        PlaybackService.this.saveMediaList();
     }
 
     @MainThread
@@ -1662,20 +1829,12 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
 
     @MainThread
     public List<MediaWrapper> getMedias() {
-        final ArrayList<MediaWrapper> ml = new ArrayList<MediaWrapper>();
-        for (int i = 0; i < mMediaList.size(); i++) {
-            ml.add(mMediaList.getMedia(i));
-        }
-        return ml;
+        return mMediaList.getMedias();
     }
 
     @MainThread
     public List<String> getMediaLocations() {
-        ArrayList<String> medias = new ArrayList<String>();
-        for (int i = 0; i < mMediaList.size(); i++) {
-            medias.add(mMediaList.getMRL(i));
-        }
-        return medias;
+        return mMediaList.getMRLs();
     }
 
     @MainThread
@@ -1728,14 +1887,47 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
         mMediaPlayer.navigate(where);
     }
 
+    /**
+     * Drop the cached tracks of a type, and the titles and chapters.
+     *
+     * @param type a Media.Track.Type, Unknown for all the tracks
+     */
+    private void invalidateTracks(int type) {
+        if (type == Media.Track.Type.Audio || type == Media.Track.Type.Unknown) {
+            mAudioTracks = null;
+            mAudioTracksLoaded = false;
+            mAudioTracksCount = -1;
+        }
+        if (type == Media.Track.Type.Video || type == Media.Track.Type.Unknown)
+            mVideoTracksCount = -1;
+        if (type == Media.Track.Type.Text || type == Media.Track.Type.Unknown) {
+            mSpuTracks = null;
+            mSpuTracksLoaded = false;
+            mSpuTracksCount = -1;
+        }
+        invalidateTitles();
+    }
+
+    private void invalidateTitles() {
+        mTitles = null;
+        mTitlesLoaded = false;
+        mChapters.clear();
+    }
+
     @MainThread
     public MediaPlayer.Chapter[] getChapters(int title) {
-        return mMediaPlayer.getChapters(title);
+        if (mChapters.indexOfKey(title) < 0)
+            mChapters.put(title, mMediaPlayer.getChapters(title));
+        return mChapters.get(title);
     }
 
     @MainThread
     public MediaPlayer.Title[] getTitles() {
-        return mMediaPlayer.getTitles();
+        if (!mTitlesLoaded) {
+            mTitles = mMediaPlayer.getTitles();
+            mTitlesLoaded = true;
+        }
+        return mTitles;
     }
 
     @MainThread
@@ -1775,12 +1967,18 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
 
     @MainThread
     public int getAudioTracksCount() {
-        return mMediaPlayer.getAudioTracksCount();
+        if (mAudioTracksCount == -1)
+            mAudioTracksCount = mMediaPlayer.getAudioTracksCount();
+        return mAudioTracksCount;
     }
 
     @MainThread
     public MediaPlayer.TrackDescription[] getAudioTracks() {
-        return mMediaPlayer.getAudioTracks();
+        if (!mAudioTracksLoaded) {
+            mAudioTracks = mMediaPlayer.getAudioTracks();
+            mAudioTracksLoaded = true;
+        }
+        return mAudioTracks;
     }
 
     @MainThread
@@ -1795,7 +1993,9 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
 
     @MainThread
     public int getVideoTracksCount() {
-        return mMediaPlayer.getVideoTracksCount();
+        if (mVideoTracksCount == -1)
+            mVideoTracksCount = mMediaPlayer.getVideoTracksCount();
+        return mVideoTracksCount;
     }
 
     @MainThread
@@ -1805,7 +2005,11 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
 
     @MainThread
     public MediaPlayer.TrackDescription[] getSpuTracks() {
-        return mMediaPlayer.getSpuTracks();
+        if (!mSpuTracksLoaded) {
+            mSpuTracks = mMediaPlayer.getSpuTracks();
+            mSpuTracksLoaded = true;
+        }
+        return mSpuTracks;
     }
 
     @MainThread
@@ -1820,7 +2024,9 @@ public class PlaybackService extends Service implements IVLCVout.Callback {
 
     @MainThread
     public int getSpuTracksCount() {
-        return mMediaPlayer.getSpuTracksCount();
+        if (mSpuTracksCount == -1)
+            mSpuTracksCount = mMediaPlayer.getSpuTracksCount();
+        return mSpuTracksCount;
     }
 
     @MainThread
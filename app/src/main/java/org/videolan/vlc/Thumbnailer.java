@@ -34,6 +34,7 @@ import org.videolan.libvlc.LibVLC;
 import org.videolan.libvlc.util.VLCUtil;
 import org.videolan.vlc.interfaces.IVideoBrowser;
 import org.videolan.vlc.util.BitmapUtil;
+import org.videolan.vlc.util.Trace;
 import org.videolan.vlc.util.VLCInstance;
 
 import android.content.Context;
@@ -175,7 +176,9 @@ public class Thumbnailer implements Runnable {
             int height = (VLCApplication.getAppResources().getDimensionPixelSize(R.dimen.grid_card_thumb_height));
 
             //Get bitmap
+            final long start = Trace.begin();
             byte[] b = VLCUtil.getThumbnail(VLCInstance.get(), item.getUri(), width, height);
+            Trace.end("Thumbnailer.getThumbnail", start);
 
             if (b == null) {// We were not able to create a thumbnail for this item, store a dummy
                 MediaDatabase.setPicture(item, Bitmap.createBitmap(1, 1, Config.ARGB_8888));
@@ -190,6 +193,7 @@ public class Thumbnailer implements Runnable {
             Log.i(TAG, "Thumbnail created for " + item.getFileName());
 
             MediaDatabase.setPicture(item, thumbnail);
+            Trace.end("Thumbnailer.job", start);
             // Post to the file browser the new item.
             if (mVideoBrowser != null && mVideoBrowser.get() != null) {
                 mVideoBrowser.get().setItemToUpdate(item);
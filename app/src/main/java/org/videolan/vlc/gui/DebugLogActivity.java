@@ -21,7 +21,10 @@
 package org.videolan.vlc.gui;
 
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.os.Bundle;
+import android.text.TextUtils;
+import android.text.format.DateFormat;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
@@ -29,8 +32,11 @@ import android.widget.ListView;
 
 import org.videolan.vlc.R;
 import org.videolan.vlc.VLCApplication;
+import org.videolan.vlc.util.AndroidDevices;
+import org.videolan.vlc.util.Trace;
 import org.videolan.vlc.util.Util;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,6 +48,8 @@ public class DebugLogActivity extends Activity implements DebugLogService.Client
     private Button mCopyButton = null;
     private Button mClearButton = null;
     private Button mSaveButton = null;
+    private Button mShowTraceButton = null;
+    private Button mSaveTraceButton = null;
     private ListView mLogView;
     private ArrayList<String> mLogList = null;
     private ArrayAdapter<String> mLogAdapter;
@@ -57,6 +65,8 @@ public class DebugLogActivity extends Activity implements DebugLogService.Client
         mCopyButton = (Button)findViewById(R.id.copy_to_clipboard);
         mClearButton = (Button)findViewById(R.id.clear_log);
         mSaveButton = (Button)findViewById(R.id.save_to_file);
+        mShowTraceButton = (Button)findViewById(R.id.show_trace);
+        mSaveTraceButton = (Button)findViewById(R.id.save_trace);
 
         mClient = new DebugLogService.Client(this, this);
 
@@ -70,6 +80,13 @@ public class DebugLogActivity extends Activity implements DebugLogService.Client
         mSaveButton.setOnClickListener(mSaveClickListener);
 
         mCopyButton.setOnClickListener(mCopyClickListener);
+        if (Trace.isEnabled()) {
+            mShowTraceButton.setOnClickListener(mShowTraceClickListener);
+            mSaveTraceButton.setOnClickListener(mSaveTraceClickListener);
+        } else {
+            mShowTraceButton.setVisibility(View.GONE);
+            mSaveTraceButton.setVisibility(View.GONE);
+        }
     }
 
     @Override
@@ -136,6 +153,52 @@ public class DebugLogActivity extends Activity implements DebugLogService.Client
         }
     };
 
+    private View.OnClickListener mShowTraceClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            final List<String> report = Trace.getReport();
+            new AlertDialog.Builder(DebugLogActivity.this)
+                    .setTitle(R.string.trace_stats)
+                    .setMessage(report.isEmpty() ? getString(R.string.trace_empty) : TextUtils.join("\n\n", report))
+                    .setPositiveButton(android.R.string.ok, null)
+                    .show();
+        }
+    };
+
+    private View.OnClickListener mSaveTraceClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(final View v) {
+            mSaveTraceButton.setEnabled(false);
+            final CharSequence timestamp = DateFormat.format(
+                    "yyyyMMdd_kkmmss", System.currentTimeMillis());
+            final String filename = AndroidDevices.EXTERNAL_PUBLIC_DIRECTORY + "/vlc_trace_" + timestamp + ".json";
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    boolean saved = true;
+                    try {
+                        Trace.export(filename);
+                    } catch (IOException e) {
+                        saved = false;
+                    }
+                    final boolean success = saved;
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            mSaveTraceButton.setEnabled(true);
+                            if (success)
+                                Util.snacker(v.getRootView(), String.format(
+                                        VLCApplication.getAppResources().getString(R.string.save_trace_success),
+                                        filename));
+                            else
+                                Util.snacker(v.getRootView(), R.string.save_trace_failure);
+                        }
+                    });
+                }
+            }).start();
+        }
+    };
+
     @Override
     public void onStarted(List<String> logList) {
         mStartButton.setEnabled(false);
@@ -157,9 +220,11 @@ public class DebugLogActivity extends Activity implements DebugLogService.Client
     }
 
     @Override
-    public void onLog(String msg) {
+    public void onLog(List<String> msgs) {
         if (mLogList != null) {
-            mLogList.add(msg);
+            mLogList.addAll(msgs);
+            if (mLogList.size() > DebugLogService.MAX_DISPLAYED_LINES)
+                mLogList.subList(0, mLogList.size() - DebugLogService.MAX_DISPLAYED_LINES).clear();
             mLogAdapter.notifyDataSetChanged();
             setOptionsButtonsEnabled(true);
         }
@@ -37,28 +37,34 @@ import android.text.format.DateFormat;
 
 import org.videolan.vlc.R;
 import org.videolan.vlc.util.AndroidDevices;
+import org.videolan.vlc.util.LogRingBuffer;
 import org.videolan.vlc.util.Logcat;
 import org.videolan.vlc.util.Util;
 
-import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 public class DebugLogService extends Service implements Logcat.Callback, Runnable {
 
     private static final int MSG_STARTED = 0;
     private static final int MSG_STOPPED = 1;
-    private static final int MSG_ONLOG = 2;
     private static final int MSG_SAVED = 3;
 
-    private static final int MAX_LINES = 20000;
+    private static final int BUFFER_SIZE = 2 * 1024 * 1024;
+    /* Lines are sent to the clients every LOG_BATCH_DELAY ms, or LOG_BATCH_LINES at a time */
+    private static final long LOG_BATCH_DELAY = 200;
+    private static final int LOG_BATCH_LINES = 100;
+    /* Maximum number of lines sent to and kept by clients, the whole buffer is saved though */
+    public static final int MAX_DISPLAYED_LINES = 5000;
 
     private Logcat mLogcat = null;
-    private LinkedList<String> mLogList = new LinkedList<String>();
+    private final LogRingBuffer mLogBuffer = new LogRingBuffer(BUFFER_SIZE);
+    /* Lines not sent to the clients yet */
+    private ArrayList<String> mPendingLines = new ArrayList<String>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
     private Thread mSaveThread = null;
     private final RemoteCallbackList<IDebugLogServiceCallback> mCallbacks = new RemoteCallbackList<IDebugLogServiceCallback>();
     private final IBinder mBinder = new DebugLogServiceStub(this);
@@ -94,6 +100,9 @@ public class DebugLogService extends Service implements Logcat.Callback, Runnabl
     }
 
     private synchronized void sendMessage(int what, String str) {
+        /* pending lines are sent after the started ones */
+        final List<String> startLines = what == MSG_STARTED ?
+                mLogBuffer.getLastLines(MAX_DISPLAYED_LINES, mPendingLines.size()) : null;
         int i = mCallbacks.beginBroadcast();
         while (i > 0) {
             i--;
@@ -104,12 +113,9 @@ public class DebugLogService extends Service implements Logcat.Callback, Runnabl
                     cb.onStopped();
                     break;
                 case MSG_STARTED: {
-                    cb.onStarted(mLogList);
+                    cb.onStarted(startLines);
                     break;
                 }
-                case MSG_ONLOG:
-                    cb.onLog(str);
-                    break;
                 case MSG_SAVED:
                     cb.onSaved(str != null ? true : false, str);
                     break;
@@ -120,12 +126,39 @@ public class DebugLogService extends Service implements Logcat.Callback, Runnabl
         mCallbacks.finishBroadcast();
     }
 
+    private synchronized void sendLogs() {
+        if (mPendingLines.isEmpty())
+            return;
+        final List<String> lines = mPendingLines;
+        mPendingLines = new ArrayList<String>();
+        int i = mCallbacks.beginBroadcast();
+        while (i > 0) {
+            i--;
+            try {
+                mCallbacks.getBroadcastItem(i).onLog(lines);
+            } catch (RemoteException e) {
+            }
+        }
+        mCallbacks.finishBroadcast();
+    }
+
+    private final Runnable mSendLogsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sendLogs();
+        }
+    };
+
     @Override
     public synchronized void onLog(String log) {
-        if (mLogList.size() > MAX_LINES)
-            mLogList.remove(0);
-        mLogList.add(log);
-        sendMessage(MSG_ONLOG, log);
+        mLogBuffer.append(log);
+        mPendingLines.add(log);
+        if (mPendingLines.size() == 1)
+            mHandler.postDelayed(mSendLogsRunnable, LOG_BATCH_DELAY);
+        else if (mPendingLines.size() == LOG_BATCH_LINES) {
+            mHandler.removeCallbacks(mSendLogsRunnable);
+            mHandler.post(mSendLogsRunnable);
+        }
     }
 
     public synchronized void start() {
@@ -155,13 +188,17 @@ public class DebugLogService extends Service implements Logcat.Callback, Runnabl
     public synchronized void stop() {
         mLogcat.stop();
         mLogcat = null;
+        mHandler.removeCallbacks(mSendLogsRunnable);
+        sendLogs();
         sendMessage(MSG_STOPPED, null);
         stopForeground(true);
         stopSelf();
     }
 
     public synchronized void clear() {
-        mLogList.clear();
+        mLogBuffer.clear();
+        mPendingLines.clear();
+        mHandler.removeCallbacks(mSendLogsRunnable);
     }
 
     /* mSaveThread */
@@ -172,26 +209,17 @@ public class DebugLogService extends Service implements Logcat.Callback, Runnabl
         final String filename = AndroidDevices.EXTERNAL_PUBLIC_DIRECTORY + "/vlc_logcat_" + timestamp + ".log";
         boolean saved = true;
         FileOutputStream fos = null;
-        OutputStreamWriter output = null;
-        BufferedWriter bw = null;
 
         try {
             fos = new FileOutputStream(filename);
-            output = new OutputStreamWriter(fos);
-            bw = new BufferedWriter(output);
             synchronized (this) {
-                for (String line : mLogList) {
-                    bw.write(line);
-                    bw.newLine();
-                }
+                mLogBuffer.writeTo(fos.getChannel());
             }
         } catch (FileNotFoundException e) {
             saved = false;
         } catch (IOException ioe) {
             saved = false;
         } finally {
-            saved &= Util.close(bw);
-            saved &= Util.close(output);
             saved &= Util.close(fos);
         }
         synchronized (this) {
@@ -232,7 +260,7 @@ public class DebugLogService extends Service implements Logcat.Callback, Runnabl
         public interface Callback {
             void onStarted(List<String> lostList);
             void onStopped();
-            void onLog(String msg);
+            void onLog(List<String> msgs);
             void onSaved(boolean success, String path);
         }
 
@@ -262,11 +290,11 @@ public class DebugLogService extends Service implements Logcat.Callback, Runnabl
                 });
             }
             @Override
-            public void onLog(final String msg) throws RemoteException {
+            public void onLog(final List<String> msgs) throws RemoteException {
                 mHandler.post(new Runnable() {
                     @Override
                     public void run() {
-                        mCallback.onLog(msg);
+                        mCallback.onLog(msgs);
                     }
                 });
             }
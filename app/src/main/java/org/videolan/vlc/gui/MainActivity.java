@@ -27,6 +27,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -60,6 +61,7 @@ import org.videolan.libvlc.util.AndroidUtil;
 import org.videolan.vlc.BuildConfig;
 import org.videolan.vlc.MediaDatabase;
 import org.videolan.vlc.MediaLibrary;
+import org.videolan.vlc.MediaWrapper;
 import org.videolan.vlc.PlaybackService;
 import org.videolan.vlc.R;
 import org.videolan.vlc.VLCApplication;
@@ -79,6 +81,8 @@ import org.videolan.vlc.util.VLCInstance;
 import org.videolan.vlc.util.WeakHandler;
 import org.videolan.vlc.widget.HackyDrawerLayout;
 
+import java.util.ArrayList;
+
 public class MainActivity extends AudioPlayerContainerActivity implements OnItemClickListener, SearchSuggestionsAdapter.SuggestionDisplay, FilterQueryProvider {
     public final static String TAG = "VLC/MainActivity";
 
@@ -653,7 +657,16 @@ public class MainActivity extends AudioPlayerContainerActivity implements OnItem
 
     @Override
     public Cursor runQuery(CharSequence constraint) {
-        return MediaDatabase.getInstance().queryMedia(constraint.toString());
+        if (mMediaLibrary.getMediaItems().isEmpty())
+            return MediaDatabase.getInstance().queryMedia(constraint.toString());
+        /* Suggestions from the in-memory index of the loaded media library */
+        final ArrayList<MediaWrapper> medias = mMediaLibrary.searchMedia(constraint.toString(),
+                MediaDatabase.SEARCH_SUGGESTIONS_LIMIT);
+        final MatrixCursor cursor = new MatrixCursor(new String[] {
+                MediaDatabase.MEDIA_LOCATION, MediaDatabase.MEDIA_TITLE }, medias.size());
+        for (MediaWrapper media : medias)
+            cursor.addRow(new Object[] { media.getLocation(), media.getTitle() });
+        return cursor;
     }
 
     private static class MainActivityHandler extends WeakHandler<MainActivity> {
@@ -0,0 +1,186 @@
+/*****************************************************************************
+ * ProgressTicker.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.gui;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import org.videolan.libvlc.util.AndroidUtil;
+
+/**
+ * Drives the playback progress widgets.
+ *
+ * The playback time is interpolated locally from the last known player time, given on
+ * TimeChanged events, so that it can be queried without calling the player. While started
+ * and playing, the listener is called on each display frame (or each second before Jelly
+ * Bean). Nothing is scheduled while stopped or paused.
+ *
+ * Must be used from the main thread.
+ */
+public class ProgressTicker {
+    public final static String TAG = "VLC/ProgressTicker";
+
+    /* Do not interpolate further than this after the last player time, e.g. while buffering */
+    private static final long MAX_INTERPOLATION = 1500; // ms
+    private static final long FALLBACK_DELAY = 1000; // ms
+
+    public interface Listener {
+        void onTick(long time);
+    }
+
+    private final Listener mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    /* Choreographer.FrameCallback, not typed to load on older devices */
+    private Object mFrameCallback = null;
+
+    private long mTime = -1;
+    private long mTimeUptime = 0;
+    private long mLength = 0;
+    private float mRate = 1.0f;
+    private boolean mPlaying = false;
+    private boolean mStarted = false;
+    private boolean mScheduled = false;
+
+    public ProgressTicker(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Set the whole player state, on state changes.
+     */
+    public void sync(long time, long length, boolean playing, float rate) {
+        mLength = length;
+        mRate = rate > 0 ? rate : 1.0f;
+        mPlaying = playing;
+        onTimeChanged(time);
+        if (mStarted) {
+            mListener.onTick(getTime());
+            schedule();
+        }
+    }
+
+    /**
+     * Set the player time, from TimeChanged events.
+     */
+    public void onTimeChanged(long time) {
+        mTime = time;
+        mTimeUptime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * @return the interpolated playback time, or -1 if it is not known yet
+     */
+    public long getTime() {
+        if (mTime < 0 || !mPlaying)
+            return mTime;
+        final long elapsed = Math.min(SystemClock.uptimeMillis() - mTimeUptime, MAX_INTERPOLATION);
+        final long time = mTime + (long) (elapsed * mRate);
+        return mLength > 0 ? Math.min(time, mLength) : time;
+    }
+
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * Set the media length, when it is known after the last {@link #sync}.
+     */
+    public void setLength(long length) {
+        mLength = length;
+    }
+
+    public boolean isPlaying() {
+        return mPlaying;
+    }
+
+    /**
+     * Call the listener now, and on each frame while playing.
+     */
+    public void start() {
+        mStarted = true;
+        if (mTime >= 0)
+            mListener.onTick(getTime());
+        schedule();
+    }
+
+    public void stop() {
+        mStarted = false;
+        unschedule();
+    }
+
+    private void schedule() {
+        if (!mStarted || !mPlaying || mScheduled)
+            return;
+        mScheduled = true;
+        if (AndroidUtil.isJellyBeanOrLater())
+            postFrameCallback();
+        else
+            mHandler.postDelayed(mTick, FALLBACK_DELAY - Math.max(0, getTime()) % 1000);
+    }
+
+    private void unschedule() {
+        if (!mScheduled)
+            return;
+        mScheduled = false;
+        if (AndroidUtil.isJellyBeanOrLater())
+            removeFrameCallback();
+        else
+            mHandler.removeCallbacks(mTick);
+    }
+
+    private void tick() {
+        mScheduled = false;
+        if (!mStarted)
+            return;
+        mListener.onTick(getTime());
+        schedule();
+    }
+
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    tick();
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrameCallback() {
+        if (mFrameCallback != null)
+            Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+}
@@ -25,11 +25,15 @@ package org.videolan.vlc.gui;
 import android.content.Context;
 import android.database.Cursor;
 import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.widget.CursorAdapter;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
+import android.text.TextUtils;
 import android.view.ViewGroup;
+import android.widget.Filter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
@@ -46,6 +50,11 @@ public class SearchSuggestionsAdapter extends CursorAdapter {
     public final static String TAG = "VLC/SearchSuggestionsAdapter";
     private static int backgroundColor;
 
+    /* Quiet time after the last keystroke before running a query */
+    private static final long QUERY_DELAY = 150;
+
+    private final SuggestionFilter mFilter = new SuggestionFilter();
+
     MediaLibrary mMediaLibrary = MediaLibrary.getInstance();
     SuggestionDisplay activity;
 
@@ -59,6 +68,80 @@ public class SearchSuggestionsAdapter extends CursorAdapter {
         backgroundColor = Util.getColorFromAttribute(context, R.attr.background_menu);
     }
 
+    @Override
+    public Filter getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * Debounces the suggestion queries: a query only runs once the text has not changed
+     * for QUERY_DELAY ms, and the queries superseded by a newer text are skipped instead
+     * of queuing behind each other.
+     *
+     * filter() is called from the main thread.
+     */
+    private class SuggestionFilter extends Filter {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private volatile String mLatestConstraint;
+        private CharSequence mPendingConstraint;
+        private FilterListener mPendingListener;
+
+        private final Runnable mFilterRunnable = new Runnable() {
+            @Override
+            public void run() {
+                runFilter(mPendingConstraint, mPendingListener);
+            }
+        };
+
+        private void runFilter(CharSequence constraint, FilterListener listener) {
+            super.filter(constraint, listener);
+        }
+
+        @Override
+        public void filter(CharSequence constraint, FilterListener listener) {
+            mLatestConstraint = constraint != null ? constraint.toString() : null;
+            mPendingConstraint = constraint;
+            mPendingListener = listener;
+            mHandler.removeCallbacks(mFilterRunnable);
+            mHandler.postDelayed(mFilterRunnable, QUERY_DELAY);
+        }
+
+        @Override
+        public CharSequence convertResultToString(Object resultValue) {
+            return convertToString((Cursor) resultValue);
+        }
+
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            final FilterResults results = new FilterResults();
+            if (!TextUtils.equals(constraint, mLatestConstraint)) {
+                // Superseded, keep the current suggestions until the next query is done
+                final Cursor current = getCursor();
+                results.count = current != null ? current.getCount() : 0;
+                return results;
+            }
+            final Cursor cursor = runQueryOnBackgroundThread(constraint);
+            if (cursor != null) {
+                results.count = cursor.getCount();
+                results.values = cursor;
+            }
+            return results;
+        }
+
+        @Override
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            final Cursor oldCursor = getCursor();
+            if (results.values != null && results.values != oldCursor)
+                changeCursor((Cursor) results.values);
+        }
+    }
+
+    /* The _id column holds the media location, not a numeric id */
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
     @Override
     public View newView(Context context, Cursor cursor, ViewGroup parent) {
         LayoutInflater inflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
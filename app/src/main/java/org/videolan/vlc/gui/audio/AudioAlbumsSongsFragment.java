@@ -388,12 +388,12 @@ public class AudioAlbumsSongsFragment extends PlaybackServiceFragment implements
                     AudioBrowserListAdapter.ListItem listItem = fragment.mSongsAdapter.getItem(msg.arg1);
                     MediaWrapper media = listItem.mMediaList.get(0);
                     final String path = media.getUri().getPath();
-                    fragment.mMediaLibrary.getMediaItems().remove(media);
+                    fragment.mMediaLibrary.removeMediaItem(media);
                     fragment.mSongsAdapter.removeMedia(media);
                     fragment.mAlbumsAdapter.removeMedia(media);
                     if (fragment.mService != null)
                         fragment.mService.removeLocation(media.getLocation());
-                    fragment.mMediaLibrary.getMediaItems().remove(media);
+                    fragment.mMediaLibrary.removeMediaItem(media);
                     new Thread(new Runnable() {
                         public void run() {
                             Util.recursiveDelete(VLCApplication.getAppContext(), new File(path));
@@ -683,7 +683,7 @@ public class AudioBrowserFragment extends MediaBrowserFragment implements SwipeR
                             Util.recursiveDelete(VLCApplication.getAppContext(), new File(path));
                         }
                     }).start();
-                    fragment.mMediaLibrary.getMediaItems().remove(mw);
+                    fragment.mMediaLibrary.removeMediaItem(mw);
                     refresh(fragment, path);
                     break;
                 case DELETE_PLAYLIST:
@@ -691,7 +691,7 @@ public class AudioBrowserFragment extends MediaBrowserFragment implements SwipeR
                     //Let's keep this toast while duration is not set correctly
                     if (!MediaDatabase.getInstance().playlistExists(listItem.mTitle)) { //File playlist
                         MediaWrapper media = listItem.mMediaList.get(0);
-                        fragment.mMediaLibrary.getMediaItems().remove(media);
+                        fragment.mMediaLibrary.removeMediaItem(media);
                         refresh(fragment, media.getLocation());
                     } else {
                         MediaDatabase.getInstance().playlistDelete(listItem.mTitle);
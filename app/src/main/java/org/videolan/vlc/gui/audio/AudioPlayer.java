@@ -58,6 +58,7 @@ import org.videolan.vlc.VLCApplication;
 import org.videolan.vlc.gui.AudioPlayerContainerActivity;
 import org.videolan.vlc.gui.PlaybackServiceFragment;
 import org.videolan.vlc.gui.PreferencesActivity;
+import org.videolan.vlc.gui.ProgressTicker;
 import org.videolan.vlc.gui.audio.widget.CoverMediaSwitcher;
 import org.videolan.vlc.gui.audio.widget.HeaderMediaSwitcher;
 import org.videolan.vlc.gui.dialogs.AdvOptionsDialog;
@@ -325,6 +326,8 @@ public class AudioPlayer extends PlaybackServiceFragment implements PlaybackServ
         if (mService == null || getActivity() == null)
             return;
 
+        syncProgressTicker();
+
         if (mService.hasMedia() && !mService.isVideoPlaying()) {
             SharedPreferences mSettings= PreferenceManager.getDefaultSharedPreferences(getActivity());
             if (mSettings.getBoolean(PreferencesActivity.VIDEO_RESTORE, false)){
@@ -396,23 +399,47 @@ public class AudioPlayer extends PlaybackServiceFragment implements PlaybackServ
 
     @Override
     public void updateProgress() {
+        /* While playing, the ticker gets the time from the TimeChanged events */
+        if (!mProgressTicker.isPlaying())
+            syncProgressTicker();
+    }
+
+    private void syncProgressTicker() {
         if (mService == null)
             return;
-        int time = (int) mService.getTime();
-        int length = (int) mService.getLength();
-
-        mHeaderTime.setText(Strings.millisToString(time));
-        mLength.setText(Strings.millisToString(length));
-        mTimeline.setMax(length);
-        mProgressBar.setMax(length);
-
-        if(!mPreviewingSeek) {
-            mTime.setText(Strings.millisToString(mShowRemainingTime ? time-length : time));
-            mTimeline.setProgress(time);
-            mProgressBar.setProgress(time);
-        }
+        mLastProgressSecond = -1;
+        mProgressTicker.sync(mService.getTime(), mService.getLength(), mService.isPlaying(), mService.getRate());
     }
 
+    /**
+     * Moves the progress bars on each frame, the labels are only updated when the displayed
+     * second changes.
+     */
+    private final ProgressTicker mProgressTicker = new ProgressTicker(new ProgressTicker.Listener() {
+        @Override
+        public void onTick(long t) {
+            final int time = (int) t;
+            final int length = (int) mProgressTicker.getLength();
+            final boolean updateText = time / 1000 != mLastProgressSecond;
+            mLastProgressSecond = time / 1000;
+
+            if (updateText) {
+                mHeaderTime.setText(Strings.millisToString(time));
+                mLength.setText(Strings.millisToString(length));
+            }
+            mTimeline.setMax(length);
+            mProgressBar.setMax(length);
+
+            if(!mPreviewingSeek) {
+                if (updateText)
+                    mTime.setText(Strings.millisToString(mShowRemainingTime ? time-length : time));
+                mTimeline.setProgress(time);
+                mProgressBar.setProgress(time);
+            }
+        }
+    });
+    private long mLastProgressSecond = -1;
+
     @Override
     public void onMediaEvent(Media.Event event) {
     }
@@ -423,6 +450,9 @@ public class AudioPlayer extends PlaybackServiceFragment implements PlaybackServ
             case MediaPlayer.Event.Opening:
                 mSwitchedToVideo = false;
                 break;
+            case MediaPlayer.Event.TimeChanged:
+                mProgressTicker.onTimeChanged(event.getTimeChanged());
+                break;
             case MediaPlayer.Event.ESAdded:
                 final boolean forceAudio = (mService.getCurrentMediaWrapper().getFlags() & MediaWrapper.MEDIA_FORCE_AUDIO) != 0;
                 if (!forceAudio && !mSwitchedToVideo && event.getEsChangedType() == Media.Track.Type.Video) {
@@ -670,10 +700,12 @@ public class AudioPlayer extends PlaybackServiceFragment implements PlaybackServ
         super.onConnected(service);
         mService.addCallback(this);
         update();
+        mProgressTicker.start();
     }
 
     @Override
     public void onStop() {
+        mProgressTicker.stop();
         /* unregister before super.onStop() since mService is set to null from this call */
         if (mService != null)
             mService.removeCallback(this);
@@ -41,6 +41,7 @@ import org.videolan.vlc.VLCApplication;
 import org.videolan.vlc.util.AndroidDevices;
 import org.videolan.vlc.util.BitmapCache;
 import org.videolan.vlc.util.MurmurHash;
+import org.videolan.vlc.util.Trace;
 import org.videolan.vlc.util.Util;
 
 import java.io.BufferedOutputStream;
@@ -74,6 +75,10 @@ public class AudioUtil {
      * User-defined playlist storage directory
      */
     public static String PLAYLIST_DIR = null;
+    /**
+     * Video seek preview storage directory
+     */
+    public static String TRICKPLAY_DIR = null;
 
     public static void setRingtone(MediaWrapper song, Context context){
         File newringtone = AndroidUtil.UriToFile(song.getUri());
@@ -130,8 +135,9 @@ public class AudioUtil {
         ART_DIR = CACHE_DIR + "/art/";
         COVER_DIR = CACHE_DIR + "/covers/";
         PLAYLIST_DIR = CACHE_DIR + "/playlists/";
+        TRICKPLAY_DIR = CACHE_DIR + "/trickplay/";
 
-        for(String path : Arrays.asList(ART_DIR, COVER_DIR)) {
+        for(String path : Arrays.asList(ART_DIR, COVER_DIR, TRICKPLAY_DIR)) {
             File file = new File(path);
             if (!file.exists())
                 file.mkdirs();
@@ -139,7 +145,7 @@ public class AudioUtil {
     }
 
     public static void clearCacheFolders() {
-        for(String path : Arrays.asList(ART_DIR, COVER_DIR)) {
+        for(String path : Arrays.asList(ART_DIR, COVER_DIR, TRICKPLAY_DIR)) {
             File file = new File(path);
             if (file.exists())
                 deleteContent(file, false);
@@ -265,8 +271,17 @@ public class AudioUtil {
         return null;
     }
 
-    @SuppressLint("NewApi")
     public synchronized static Bitmap getCover(Context context, MediaWrapper media, int width) {
+        final long start = Trace.begin();
+        try {
+            return loadCover(context, media, width);
+        } finally {
+            Trace.end("AudioUtil.getCover", start);
+        }
+    }
+
+    @SuppressLint("NewApi")
+    private static Bitmap loadCover(Context context, MediaWrapper media, int width) {
         BitmapCache cache = BitmapCache.getInstance();
         String coverPath = null;
         Bitmap cover = null;
@@ -25,7 +25,7 @@ import java.util.Comparator;
 
 public class MediaComparators {
 
-    private static int nullInsensitiveStringCompare(final String s1, final String s2) {
+    public static int nullInsensitiveStringCompare(final String s1, final String s2) {
         if (s1 == null ^ s2 == null)
             return s1 == null ? -1 : 1;
 
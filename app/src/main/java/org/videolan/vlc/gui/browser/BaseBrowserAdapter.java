@@ -23,6 +23,8 @@
 package org.videolan.vlc.gui.browser;
 
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
@@ -45,6 +47,8 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -57,7 +61,17 @@ public class BaseBrowserAdapter extends  RecyclerView.Adapter<RecyclerView.ViewH
 
     protected int FOLDER_RES_ID = R.drawable.ic_menu_folder;
 
+    /* Delay for accumulating the browsed items before inserting them, about one frame */
+    private static final long BATCH_DELAY = 16;
+
     ArrayList<Object> mMediaList = new ArrayList<Object>();
+    /* New content being loaded by a refresh, diffed with mMediaList once complete */
+    private ArrayList<Object> mRefreshList = null;
+    /* Browsed items waiting for the next batch */
+    private final ArrayList<Object> mPendingItems = new ArrayList<Object>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    /* true if mMediaList changed without notification */
+    private boolean mDirty = false;
     BaseBrowserFragment fragment;
     MediaDatabase mDbManager;
     LinkedList<String> mMediaDirsLocation;
@@ -221,9 +235,23 @@ public class BaseBrowserAdapter extends  RecyclerView.Adapter<RecyclerView.ViewH
 
     public void clear(){
         mMediaList.clear();
+        mRefreshList = null;
+        mPendingItems.clear();
+        mHandler.removeCallbacks(mFlushRunnable);
+        mDirty = false;
         notifyDataSetChanged();
     }
 
+    /**
+     * Notify the changes done without notification, if any.
+     */
+    public void notifyPendingChanges(){
+        if (mDirty) {
+            mDirty = false;
+            notifyDataSetChanged();
+        }
+    }
+
     public boolean isEmpty(){
         return mMediaList.isEmpty();
     }
@@ -244,6 +272,156 @@ public class BaseBrowserAdapter extends  RecyclerView.Adapter<RecyclerView.ViewH
         mMediaList.add(position, item);
         if (notify)
             notifyItemInserted(position);
+        else
+            mDirty = true;
+    }
+
+    /**
+     * @return the item to show for a browsed media, or null to skip it
+     */
+    protected Object createItem(MediaWrapper mw){
+        return mw.getTitle().startsWith(".") ? null : mw;
+    }
+
+    /**
+     * Start loading new content. If items are already shown, they stay until
+     * {@link #endRefresh()}, otherwise the new items are shown batch by batch.
+     */
+    public void startRefresh(){
+        mPendingItems.clear();
+        mHandler.removeCallbacks(mFlushRunnable);
+        mRefreshList = mMediaList.isEmpty() ? null : new ArrayList<Object>();
+    }
+
+    /**
+     * Show the content loaded since {@link #startRefresh()}, only notifying the rows that
+     * have been removed, moved or inserted.
+     */
+    public void endRefresh(){
+        flushPendingItems();
+        if (mRefreshList == null)
+            return;
+        final ArrayList<Object> newList = mRefreshList;
+        mRefreshList = null;
+        if (mDirty)
+            mMediaList = newList;
+        else
+            applyDiff(newList);
+        notifyPendingChanges();
+    }
+
+    /**
+     * Queue a browsed media, it is inserted at its sorted position with the next batch.
+     */
+    public void queueItem(Media media){
+        final Object item = createItem(new MediaWrapper(media));
+        if (item == null)
+            return;
+        if (mPendingItems.isEmpty())
+            mHandler.postDelayed(mFlushRunnable, BATCH_DELAY);
+        mPendingItems.add(item);
+    }
+
+    /**
+     * Insert a batch of browsed media at their sorted positions.
+     */
+    public void addItems(List<MediaWrapper> items){
+        for (MediaWrapper mw : items) {
+            final Object item = createItem(mw);
+            if (item != null)
+                mPendingItems.add(item);
+        }
+        flushPendingItems();
+    }
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushPendingItems();
+        }
+    };
+
+    private void flushPendingItems(){
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (mPendingItems.isEmpty())
+            return;
+        final boolean refreshing = mRefreshList != null;
+        final ArrayList<Object> list = refreshing ? mRefreshList : mMediaList;
+        for (Object item : mPendingItems) {
+            int position = Collections.binarySearch(list, item, sItemComparator);
+            if (position < 0)
+                position = -position - 1;
+            list.add(position, item);
+            if (!refreshing && !mDirty)
+                notifyItemInserted(position);
+        }
+        mPendingItems.clear();
+    }
+
+    private static final Comparator<Object> sItemComparator = new Comparator<Object>() {
+        @Override
+        public int compare(Object lhs, Object rhs) {
+            final int diff = rank(lhs) - rank(rhs);
+            /* same order as MediaComparators.byName, used by LocalDirectoryLister */
+            return diff != 0 ? diff : MediaComparators.nullInsensitiveStringCompare(name(lhs), name(rhs));
+        }
+
+        /* directories first */
+        private int rank(Object item) {
+            return item instanceof Storage || (item instanceof MediaWrapper &&
+                    ((MediaWrapper) item).getType() == MediaWrapper.TYPE_DIR) ? 0 : 1;
+        }
+
+        private String name(Object item) {
+            if (item instanceof MediaWrapper)
+                return ((MediaWrapper) item).getTitle();
+            else if (item instanceof Storage)
+                return ((Storage) item).getName();
+            return String.valueOf(item);
+        }
+    };
+
+    private static String itemKey(Object item) {
+        if (item instanceof MediaWrapper)
+            return ((MediaWrapper) item).getLocation();
+        else if (item instanceof Storage)
+            return ((Storage) item).getUri().toString();
+        return "#" + item;
+    }
+
+    /**
+     * Turn mMediaList into newList with item removals, moves and insertions.
+     * Items present in both lists are kept, with their description.
+     */
+    private void applyDiff(ArrayList<Object> newList){
+        final HashSet<String> newKeys = new HashSet<String>(newList.size());
+        for (Object item : newList)
+            newKeys.add(itemKey(item));
+        for (int i = mMediaList.size() - 1; i >= 0; --i) {
+            if (!newKeys.contains(itemKey(mMediaList.get(i)))) {
+                mMediaList.remove(i);
+                notifyItemRemoved(i);
+            }
+        }
+
+        final HashSet<String> keptKeys = new HashSet<String>(mMediaList.size());
+        for (Object item : mMediaList)
+            keptKeys.add(itemKey(item));
+        for (int i = 0; i < newList.size(); ++i) {
+            final String key = itemKey(newList.get(i));
+            if (i < mMediaList.size() && key.equals(itemKey(mMediaList.get(i))))
+                continue;
+            if (keptKeys.contains(key)) {
+                int from = i + 1;
+                while (!key.equals(itemKey(mMediaList.get(from))))
+                    ++from;
+                mMediaList.add(i, mMediaList.remove(from));
+                notifyItemMoved(from, i);
+            } else {
+                mMediaList.add(i, newList.get(i));
+                notifyItemInserted(i);
+            }
+        }
     }
 
     public void setDescription(int position, String description){
@@ -275,19 +453,51 @@ public class BaseBrowserAdapter extends  RecyclerView.Adapter<RecyclerView.ViewH
         mMediaList.clear();
         for (MediaWrapper mw : mediaList)
             mMediaList.add(mw);
+        mDirty = true;
     }
 
     public void removeItem(int position, boolean notify){
         mMediaList.remove(position);
         if (notify) {
             notifyItemRemoved(position);
+        } else
+            mDirty = true;
+    }
+
+    /**
+     * Remove a browsed media, from the content being loaded during a refresh.
+     */
+    public void removeItem(String location, boolean notify){
+        for (int i = mPendingItems.size() - 1; i >= 0; --i)
+            if (location.equals(itemKey(mPendingItems.get(i))))
+                mPendingItems.remove(i);
+        if (mRefreshList != null) {
+            for (int i = mRefreshList.size() - 1; i >= 0; --i)
+                if (location.equals(itemKey(mRefreshList.get(i))))
+                    mRefreshList.remove(i);
+            return;
         }
+        final int position = getItemPosition(location);
+        if (position != -1)
+            removeItem(position, notify);
     }
 
     public Object getItem(int position){
         return mMediaList.get(position);
     }
 
+    /**
+     * @return the position of the first media with this location, or -1
+     */
+    public int getItemPosition(String location){
+        for (int i = 0; i < mMediaList.size(); ++i) {
+            final Object item = mMediaList.get(i);
+            if (item instanceof MediaWrapper && ((MediaWrapper) item).getLocation().equals(location))
+                return i;
+        }
+        return -1;
+    }
+
     public int getItemViewType(int position){
         if (getItem(position) instanceof  MediaWrapper)
             return TYPE_MEDIA;
@@ -297,31 +507,6 @@ public class BaseBrowserAdapter extends  RecyclerView.Adapter<RecyclerView.ViewH
             return TYPE_SEPARATOR;
     }
 
-    public void sortList(){
-        ArrayList<MediaWrapper> files = new ArrayList<MediaWrapper>(), dirs = new ArrayList<MediaWrapper>();
-        for (Object item : mMediaList){
-            if (item instanceof MediaWrapper) {
-                MediaWrapper media = (MediaWrapper) item;
-                if (media.getType() == MediaWrapper.TYPE_DIR)
-                    dirs.add(media);
-                else
-                    files.add(media);
-            }
-        }
-        if (dirs.isEmpty() && files.isEmpty())
-            return;
-        mMediaList.clear();
-        if (!dirs.isEmpty()) {
-            Collections.sort(dirs, MediaComparators.byName);
-            mMediaList.addAll(dirs);
-        }
-        if (!files.isEmpty()) {
-            Collections.sort(files, MediaComparators.byName);
-            mMediaList.addAll(files);
-        }
-        notifyDataSetChanged();
-    }
-
     protected int getIconResId(MediaWrapper media) {
         switch (media.getType()){
             case MediaWrapper.TYPE_AUDIO:
@@ -34,7 +34,6 @@ import android.support.v7.app.AlertDialog;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.PopupMenu;
 import android.support.v7.widget.RecyclerView;
-import android.text.TextUtils;
 import android.util.SparseArray;
 import android.view.ContextMenu;
 import android.view.LayoutInflater;
@@ -65,6 +64,8 @@ import org.videolan.vlc.widget.ContextMenuRecyclerView;
 import org.videolan.vlc.widget.SwipeRefreshLayout;
 
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 public abstract class BaseBrowserFragment extends MediaBrowserFragment implements IRefreshable, MediaBrowser.EventListener, SwipeRefreshLayout.OnRefreshListener {
@@ -89,7 +90,20 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
 
     private SparseArray<ArrayList<MediaWrapper>> mMediaLists = new SparseArray<ArrayList<MediaWrapper>>();
     private ArrayList<MediaWrapper> mediaList;
-    public int mCurrentParsedPosition = 0;
+    /* local listings of all the browsers, one at a time */
+    private static final ExecutorService sListingExecutor = Executors.newSingleThreadExecutor();
+    /* incremented on each refresh, to drop the outdated local listings */
+    private int mListingGeneration = 0;
+    private final DirectorySummarizer mSummarizer = new DirectorySummarizer(new DirectorySummarizer.Callback() {
+        @Override
+        public void onSummary(int position, Uri uri, DirectorySummarizer.Summary summary) {
+            /* the list may have changed since the request */
+            if (position >= mAdapter.getItemCount() || !uri.equals(getDirectoryUri(position)))
+                return;
+            mAdapter.setDescription(position, getDescription(summary.folderCount, summary.fileCount));
+            mMediaLists.put(position, new ArrayList<MediaWrapper>(summary.content));
+        }
+    });
 
     protected abstract Fragment createFragment();
     protected abstract void browseRoot();
@@ -151,6 +165,7 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
     public void onStop(){
         super.onStop();
         releaseBrowser();
+        mSummarizer.release();
     }
 
     private void releaseBrowser() {
@@ -215,7 +230,10 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
 
     @Override
     public void onMediaAdded(int index, Media media) {
-        mAdapter.addItem(media, mReadyToDisplay && mRoot, mRoot);
+        if (mRoot)
+            mAdapter.addItem(media, mReadyToDisplay, true);
+        else
+            mAdapter.queueItem(media);
         if (mReadyToDisplay)
             updateEmptyView();
         if (mRoot)
@@ -224,15 +242,19 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
 
     @Override
     public void onMediaRemoved(int index, Media media) {
-        mAdapter.removeItem(index, mReadyToDisplay);
+        /* index is the position in the libVLC list, not in the sorted adapter */
+        mAdapter.removeItem(media.getUri().toString(), mReadyToDisplay);
     }
 
     @Override
     public void onBrowseEnd() {
         releaseBrowser();
+        mAdapter.endRefresh();
         mHandler.sendEmptyMessage(BrowserFragmentHandler.MSG_HIDE_LOADING);
-        if (mReadyToDisplay)
+        if (mReadyToDisplay) {
+            updateEmptyView();
             display();
+        }
     }
 
     @Override
@@ -252,6 +274,8 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
             int topRowVerticalPosition =
                     (recyclerView == null || recyclerView.getChildCount() == 0) ? 0 : recyclerView.getChildAt(0).getTop();
             mSwipeRefreshLayout.setEnabled(topRowVerticalPosition >= 0);
+            mSummarizer.setVisibleRange(mLayoutManager.findFirstVisibleItemPosition(),
+                    mLayoutManager.findLastVisibleItemPosition());
         }
     };
 
@@ -292,26 +316,81 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
                 mSavedPosition = 0;
             }
         }
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyPendingChanges();
         parseSubDirectories();
         focusHelper();
     }
 
     @Override
     public void refresh() {
-        mAdapter.clear();
-        if (mMediaBrowser == null)
-            mMediaBrowser = new MediaBrowser(VLCInstance.get(), this);
-        else
-            mMediaBrowser.changeEventListener(this);
-        mCurrentParsedPosition = 0;
         if (mRoot)
-            browseRoot();
+            mAdapter.clear();
         else
-            mMediaBrowser.browse(mCurrentMedia != null ? mCurrentMedia.getUri() : Uri.parse(mMrl));
+            mAdapter.startRefresh();
+        mSummarizer.cancel();
+        ++mListingGeneration;
+        final Uri uri = mRoot ? null : mCurrentMedia != null ? mCurrentMedia.getUri() : Uri.parse(mMrl);
+        if (LocalDirectoryLister.canList(uri)) {
+            releaseBrowser();
+            listLocalDirectory(uri);
+        } else {
+            if (mMediaBrowser == null)
+                mMediaBrowser = new MediaBrowser(VLCInstance.get(), this);
+            else
+                mMediaBrowser.changeEventListener(this);
+            if (mRoot)
+                browseRoot();
+            else
+                mMediaBrowser.browse(uri);
+        }
         mHandler.sendEmptyMessageDelayed(BrowserFragmentHandler.MSG_SHOW_LOADING, 300);
     }
 
+    /**
+     * @return false to only list the sub-directories of local directories
+     */
+    protected boolean showFiles() {
+        return true;
+    }
+
+    /**
+     * @return the extensions of the local files not to list, see
+     * {@link MediaBrowser#setIgnoreFileTypes(String)}
+     */
+    protected String getIgnoredFileTypes() {
+        return MediaBrowser.DEFAULT_IGNORE_LIST;
+    }
+
+    /**
+     * List a local directory in the background, and show it at once.
+     */
+    private void listLocalDirectory(final Uri uri) {
+        final int generation = mListingGeneration;
+        final boolean withFiles = showFiles();
+        final String ignoreList = getIgnoredFileTypes();
+        sListingExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<MediaWrapper> list = LocalDirectoryLister.list(uri, withFiles, ignoreList);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mListingGeneration)
+                            return;
+                        if (list != null)
+                            mAdapter.addItems(list);
+                        mAdapter.endRefresh();
+                        mHandler.sendEmptyMessage(BrowserFragmentHandler.MSG_HIDE_LOADING);
+                        if (mReadyToDisplay) {
+                            updateEmptyView();
+                            display();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
 
     protected static class BrowserFragmentHandler extends WeakHandler<BaseBrowserFragment> {
 
@@ -477,107 +556,47 @@ public abstract class BaseBrowserFragment extends MediaBrowserFragment implement
     }
 
     protected void parseSubDirectories() {
-        if (mCurrentParsedPosition == -1 || mAdapter.isEmpty())
-            return;
+        mSummarizer.cancel();
         mMediaLists.clear();
-        if (mMediaBrowser == null)
-            mMediaBrowser = new MediaBrowser(VLCInstance.get(), mFoldersBrowserListener);
-        else
-            mMediaBrowser.changeEventListener(mFoldersBrowserListener);
-        mCurrentParsedPosition = 0;
-        Object item;
-        MediaWrapper mw;
-        while (mCurrentParsedPosition <mAdapter.getItemCount()){
-            item = mAdapter.getItem(mCurrentParsedPosition);
-            if (item instanceof BaseBrowserAdapter.Storage) {
-                mw = new MediaWrapper(((BaseBrowserAdapter.Storage) item).getUri());
-                mw.setType(MediaWrapper.TYPE_DIR);
-            } else  if (item instanceof MediaWrapper){
-                mw = (MediaWrapper) item;
-            } else
-                mw = null;
-            if (mw != null){
-                if (mw.getType() == MediaWrapper.TYPE_DIR || mw.getType() == MediaWrapper.TYPE_PLAYLIST){
-                    mMediaBrowser.browse(mw.getUri());
-                    return;
-                }
-            }
-            ++mCurrentParsedPosition;
+        mSummarizer.setVisibleRange(mLayoutManager.findFirstVisibleItemPosition(),
+                mLayoutManager.findLastVisibleItemPosition());
+        for (int i = 0; i < mAdapter.getItemCount(); ++i) {
+            final Uri uri = getDirectoryUri(i);
+            if (uri != null)
+                mSummarizer.request(i, uri);
         }
     }
 
-    private MediaBrowser.EventListener mFoldersBrowserListener = new MediaBrowser.EventListener(){
-        ArrayList<MediaWrapper> directories = new ArrayList<MediaWrapper>();
-        ArrayList<MediaWrapper> files = new ArrayList<MediaWrapper>();
-
-        @Override
-        public void onMediaAdded(int index, Media media) {
-            int type = media.getType();
-            if (type == Media.Type.Directory)
-                directories.add(new MediaWrapper(media));
-            else if (type == Media.Type.File)
-                files.add(new MediaWrapper(media));
-        }
-
-        @Override
-        public void onMediaRemoved(int index, Media media) {}
-
-        @Override
-        public void onBrowseEnd() {
-            if (mAdapter.isEmpty()) {
-                mCurrentParsedPosition = -1;
-                releaseBrowser();
-                return;
-            }
-            String holderText = getDescription(directories.size(), files.size());
-            MediaWrapper mw = null;
-
-            if (!TextUtils.equals(holderText, "")) {
-                mAdapter.setDescription(mCurrentParsedPosition, holderText);
-                directories.addAll(files);
-                mMediaLists.put(mCurrentParsedPosition, new ArrayList<MediaWrapper>(directories));
-            }
-            while (++mCurrentParsedPosition < mAdapter.getItemCount()){ //skip media that are not browsable
-                if (mAdapter.getItem(mCurrentParsedPosition) instanceof MediaWrapper) {
-                    mw = (MediaWrapper) mAdapter.getItem(mCurrentParsedPosition);
-                    if (mw.getType() == MediaWrapper.TYPE_DIR || mw.getType() == MediaWrapper.TYPE_PLAYLIST)
-                        break;
-                } else if (mAdapter.getItem(mCurrentParsedPosition) instanceof BaseBrowserAdapter.Storage) {
-                    mw = new MediaWrapper(((BaseBrowserAdapter.Storage) mAdapter.getItem(mCurrentParsedPosition)).getUri());
-                    break;
-                } else
-                    mw = null;
-            }
-
-            if (mw != null) {
-                if (mCurrentParsedPosition < mAdapter.getItemCount()) {
-                    mMediaBrowser.browse(mw.getUri());
-                } else {
-                    mCurrentParsedPosition = -1;
-                    releaseBrowser();
-                }
-            } else
-                releaseBrowser();
-            directories .clear();
-            files.clear();
+    /**
+     * @return the uri of the item at position if it is browsable, null otherwise
+     */
+    private Uri getDirectoryUri(int position) {
+        final Object item = mAdapter.getItem(position);
+        if (item instanceof BaseBrowserAdapter.Storage)
+            return ((BaseBrowserAdapter.Storage) item).getUri();
+        if (item instanceof MediaWrapper) {
+            final MediaWrapper mw = (MediaWrapper) item;
+            if (mw.getType() == MediaWrapper.TYPE_DIR || mw.getType() == MediaWrapper.TYPE_PLAYLIST)
+                return mw.getUri();
         }
+        return null;
+    }
 
-        private String getDescription(int folderCount, int mediaFileCount) {
-            String holderText = "";
-            if (folderCount > 0) {
-                holderText += VLCApplication.getAppResources().getQuantityString(
-                        R.plurals.subfolders_quantity, folderCount, folderCount
-                );
-                if (mediaFileCount > 0)
-                    holderText += ", ";
-            }
+    private String getDescription(int folderCount, int mediaFileCount) {
+        String holderText = "";
+        if (folderCount > 0) {
+            holderText += VLCApplication.getAppResources().getQuantityString(
+                    R.plurals.subfolders_quantity, folderCount, folderCount
+            );
             if (mediaFileCount > 0)
-                holderText += VLCApplication.getAppResources().getQuantityString(
-                        R.plurals.mediafiles_quantity, mediaFileCount,
-                        mediaFileCount);
-            else if (folderCount == 0 && mediaFileCount == 0)
-                holderText = getString(R.string.directory_empty);
-            return holderText;
+                holderText += ", ";
         }
-    };
+        if (mediaFileCount > 0)
+            holderText += VLCApplication.getAppResources().getQuantityString(
+                    R.plurals.mediafiles_quantity, mediaFileCount,
+                    mediaFileCount);
+        else if (folderCount == 0 && mediaFileCount == 0)
+            holderText = VLCApplication.getAppResources().getString(R.string.directory_empty);
+        return holderText;
+    }
 }
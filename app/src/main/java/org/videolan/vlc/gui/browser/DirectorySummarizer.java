@@ -0,0 +1,286 @@
+/**
+ * **************************************************************************
+ * DirectorySummarizer.java
+ * ****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ * ***************************************************************************
+ */
+package org.videolan.vlc.gui.browser;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import org.videolan.libvlc.Media;
+import org.videolan.libvlc.util.MediaBrowser;
+import org.videolan.vlc.MediaWrapper;
+import org.videolan.vlc.util.VLCInstance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Counts the sub-directories and files of directories, to describe them in the browsers.
+ *
+ * Up to MAX_BROWSERS directories are browsed at the same time, each one by a MediaBrowser of a
+ * pool, or listed on a background thread if local. Pending directories in the visible range
+ * are browsed first.
+ * Summaries are cached for the whole process, keyed by the directory URI and checked against
+ * the modification time of local directories. Remote directories have no modification time,
+ * their summaries expire after REMOTE_CACHE_TTL instead.
+ *
+ * Must be used from the main thread, the summaries are delivered on it.
+ */
+public class DirectorySummarizer {
+    public final static String TAG = "VLC/DirectorySummarizer";
+
+    private static final int MAX_BROWSERS = 4;
+    private static final int CACHE_SIZE = 512;
+    private static final long REMOTE_CACHE_TTL = 5 * 60 * 1000; // ms
+
+    public interface Callback {
+        void onSummary(int position, Uri uri, Summary summary);
+    }
+
+    public static class Summary {
+        public final int folderCount;
+        public final int fileCount;
+        /* sub-directories first, then files */
+        public final ArrayList<MediaWrapper> content;
+        /* modification time of a local directory, creation time for a remote one */
+        private final long stamp;
+
+        private Summary(ArrayList<MediaWrapper> directories, ArrayList<MediaWrapper> files, long stamp) {
+            folderCount = directories.size();
+            fileCount = files.size();
+            content = new ArrayList<MediaWrapper>(folderCount + fileCount);
+            content.addAll(directories);
+            content.addAll(files);
+            this.stamp = stamp;
+        }
+    }
+
+    private static class Job {
+        final int position;
+        final Uri uri;
+        final long stamp;
+        final int generation;
+
+        Job(int position, Uri uri, long stamp, int generation) {
+            this.position = position;
+            this.uri = uri;
+            this.stamp = stamp;
+            this.generation = generation;
+        }
+    }
+
+    /* Only accessed from the main thread */
+    private static final LinkedHashMap<String, Summary> sCache = new LinkedHashMap<String, Summary>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Summary> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /* local listings of all the summarizers, one at a time */
+    private static final ExecutorService sLocalExecutor = Executors.newSingleThreadExecutor();
+
+    private final Callback mCallback;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Job> mPending = new ArrayList<Job>();
+    private final ArrayList<MediaBrowser> mIdleBrowsers = new ArrayList<MediaBrowser>();
+    private final ArrayList<MediaBrowser> mBusyBrowsers = new ArrayList<MediaBrowser>();
+    private int mLocalJobs = 0;
+    private int mGeneration = 0;
+    private int mFirstVisible = 0, mLastVisible = -1;
+
+    public DirectorySummarizer(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Summarize the directory at position. The callback is called right away if the summary
+     * is cached and still valid.
+     */
+    public void request(int position, Uri uri) {
+        final long stamp = getStamp(uri);
+        final Summary summary = sCache.get(uri.toString());
+        if (summary != null && isValid(uri, summary, stamp)) {
+            mCallback.onSummary(position, uri, summary);
+            return;
+        }
+        mPending.add(new Job(position, uri, stamp, mGeneration));
+        schedule();
+    }
+
+    /**
+     * Browse the pending directories between first and last before the others.
+     */
+    public void setVisibleRange(int first, int last) {
+        mFirstVisible = first;
+        mLastVisible = last;
+    }
+
+    /**
+     * Drop the pending and running requests, their results won't be delivered.
+     */
+    public void cancel() {
+        ++mGeneration;
+        mPending.clear();
+        /* A running browse can't be interrupted, drop its browser */
+        for (MediaBrowser browser : mBusyBrowsers)
+            browser.release();
+        mBusyBrowsers.clear();
+        mLocalJobs = 0;
+    }
+
+    /**
+     * Cancel the requests and release the browsers. The summarizer can still be used.
+     */
+    public void release() {
+        cancel();
+        for (MediaBrowser browser : mIdleBrowsers)
+            browser.release();
+        mIdleBrowsers.clear();
+    }
+
+    private void schedule() {
+        while (!mPending.isEmpty() && mBusyBrowsers.size() + mLocalJobs < MAX_BROWSERS) {
+            final Job job = mPending.remove(nextJobIndex());
+            if (LocalDirectoryLister.canList(job.uri)) {
+                ++mLocalJobs;
+                listLocal(job);
+                continue;
+            }
+            final MediaBrowser browser = mIdleBrowsers.isEmpty() ?
+                    new MediaBrowser(VLCInstance.get(), null) : mIdleBrowsers.remove(mIdleBrowsers.size() - 1);
+            mBusyBrowsers.add(browser);
+            browser.changeEventListener(new JobListener(job, browser));
+            browser.browse(job.uri);
+        }
+    }
+
+    private int nextJobIndex() {
+        for (int i = 0; i < mPending.size(); ++i) {
+            final int position = mPending.get(i).position;
+            if (position >= mFirstVisible && position <= mLastVisible)
+                return i;
+        }
+        /* requests come in position order */
+        return 0;
+    }
+
+    private void listLocal(final Job job) {
+        sLocalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<MediaWrapper> content = LocalDirectoryLister.list(job.uri, true);
+                final ArrayList<MediaWrapper> directories = new ArrayList<MediaWrapper>();
+                final ArrayList<MediaWrapper> files = new ArrayList<MediaWrapper>();
+                if (content != null) {
+                    for (MediaWrapper mw : content) {
+                        if (mw.getType() == MediaWrapper.TYPE_DIR)
+                            directories.add(mw);
+                        else
+                            files.add(mw);
+                    }
+                }
+                final Summary summary = new Summary(directories, files, job.stamp);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onJobDone(job, null, summary);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @param browser the browser used for the job, null for a local listing
+     */
+    private void onJobDone(Job job, MediaBrowser browser, Summary summary) {
+        if (job.generation != mGeneration)
+            return; // browser already released by cancel()
+        if (browser != null) {
+            mBusyBrowsers.remove(browser);
+            mIdleBrowsers.add(browser);
+        } else
+            --mLocalJobs;
+        sCache.put(job.uri.toString(), summary);
+        mCallback.onSummary(job.position, job.uri, summary);
+        schedule();
+    }
+
+    private static boolean isLocal(Uri uri) {
+        return TextUtils.equals(uri.getScheme(), "file");
+    }
+
+    private static long getStamp(Uri uri) {
+        return isLocal(uri) ? new File(uri.getPath()).lastModified() : SystemClock.elapsedRealtime();
+    }
+
+    private static boolean isValid(Uri uri, Summary summary, long stamp) {
+        if (isLocal(uri))
+            return stamp != 0 && summary.stamp == stamp;
+        return stamp - summary.stamp < REMOTE_CACHE_TTL;
+    }
+
+    /**
+     * Collects the content of one directory, on the libVLC event thread.
+     */
+    private class JobListener implements MediaBrowser.EventListener {
+        private final Job mJob;
+        private final MediaBrowser mBrowser;
+        private final ArrayList<MediaWrapper> mDirectories = new ArrayList<MediaWrapper>();
+        private final ArrayList<MediaWrapper> mFiles = new ArrayList<MediaWrapper>();
+
+        JobListener(Job job, MediaBrowser browser) {
+            mJob = job;
+            mBrowser = browser;
+        }
+
+        @Override
+        public void onMediaAdded(int index, Media media) {
+            int type = media.getType();
+            if (type == Media.Type.Directory)
+                mDirectories.add(new MediaWrapper(media));
+            else if (type == Media.Type.File)
+                mFiles.add(new MediaWrapper(media));
+        }
+
+        @Override
+        public void onMediaRemoved(int index, Media media) {}
+
+        @Override
+        public void onBrowseEnd() {
+            final Summary summary = new Summary(mDirectories, mFiles, mJob.stamp);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onJobDone(mJob, mBrowser, summary);
+                }
+            });
+        }
+    }
+}
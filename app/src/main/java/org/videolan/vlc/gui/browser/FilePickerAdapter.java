@@ -42,6 +42,11 @@ public class FilePickerAdapter extends BaseBrowserAdapter {
             addItem(mediaWrapper, notify, top);
     }
 
+    @Override
+    protected Object createItem(MediaWrapper mw){
+        return filter(mw) ? super.createItem(mw) : null;
+    }
+
     public void onBindViewHolder(final RecyclerView.ViewHolder holder, int position) {
         final MediaViewHolder vh = (MediaViewHolder) holder;
         final MediaWrapper media = (MediaWrapper) getItem(position);
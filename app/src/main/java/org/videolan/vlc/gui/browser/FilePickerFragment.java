@@ -59,10 +59,15 @@ public class FilePickerFragment extends FileBrowserFragment {
     @Override
     public void onStart() {
         super.onStart();
-        mMediaBrowser.setIgnoreFileTypes("db,nfo,ini,jpg,jpeg,ljpg,gif,png,pgm,pgmyuv,pbm,pam,tga,bmp,pnm,xpm,xcf,pcx,tif,tiff,lbm,sfv");
+        mMediaBrowser.setIgnoreFileTypes(getIgnoredFileTypes());
         getActivity().setTitle(getTitle());
     }
 
+    @Override
+    protected String getIgnoredFileTypes() {
+        return "db,nfo,ini,jpg,jpeg,ljpg,gif,png,pgm,pgmyuv,pbm,pam,tga,bmp,pnm,xpm,xcf,pcx,tif,tiff,lbm,sfv";
+    }
+
     void pickFile(MediaWrapper mw){
         getActivity().setResult(Activity.RESULT_OK, new Intent(Intent.ACTION_PICK, mw.getUri()));
         getActivity().finish();
@@ -0,0 +1,135 @@
+/**
+ * **************************************************************************
+ * LocalDirectoryLister.java
+ * ****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ * ***************************************************************************
+ */
+package org.videolan.vlc.gui.browser;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import org.videolan.libvlc.util.AndroidUtil;
+import org.videolan.libvlc.util.Extensions;
+import org.videolan.libvlc.util.MediaBrowser;
+import org.videolan.vlc.MediaWrapper;
+import org.videolan.vlc.gui.audio.MediaComparators;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+
+/**
+ * Lists local directories directly from the file system, without going through a libVLC
+ * MediaBrowser and its per item events.
+ *
+ * Files are typed from their extension: only the video, audio, subtitles and playlist files
+ * are listed, minus the ignored extensions.
+ */
+public class LocalDirectoryLister {
+    public final static String TAG = "VLC/LocalDirectoryLister";
+
+    private static final HashSet<String> DEFAULT_IGNORED_EXTENSIONS = parseIgnoreList(MediaBrowser.DEFAULT_IGNORE_LIST);
+
+    public static boolean canList(Uri uri) {
+        return uri != null && TextUtils.equals(uri.getScheme(), "file");
+    }
+
+    /**
+     * List a local directory. Does file system accesses, not to be called from the main thread.
+     *
+     * @param uri a file:// uri
+     * @param withFiles false to only list the sub-directories
+     * @return the directories then the files, sorted by name, or null if the directory can't
+     * be read
+     */
+    public static ArrayList<MediaWrapper> list(Uri uri, boolean withFiles) {
+        return list(uri, withFiles, DEFAULT_IGNORED_EXTENSIONS);
+    }
+
+    /**
+     * @param ignoreList comma separated extensions of the files to skip, as given to
+     * {@link MediaBrowser#setIgnoreFileTypes(String)}
+     */
+    public static ArrayList<MediaWrapper> list(Uri uri, boolean withFiles, String ignoreList) {
+        return list(uri, withFiles, parseIgnoreList(ignoreList));
+    }
+
+    private static ArrayList<MediaWrapper> list(Uri uri, boolean withFiles, HashSet<String> ignoredExtensions) {
+        final File[] files = new File(uri.getPath()).listFiles();
+        if (files == null)
+            return null;
+        final ArrayList<MediaWrapper> directories = new ArrayList<MediaWrapper>();
+        final ArrayList<MediaWrapper> media = new ArrayList<MediaWrapper>();
+        for (File file : files) {
+            final String name = file.getName();
+            if (name.startsWith("."))
+                continue;
+            final int type;
+            if (file.isDirectory())
+                type = MediaWrapper.TYPE_DIR;
+            else if (withFiles)
+                type = getFileType(name, ignoredExtensions);
+            else
+                continue;
+            if (type == MediaWrapper.TYPE_ALL)
+                continue;
+            final MediaWrapper mw = new MediaWrapper(AndroidUtil.FileToUri(file));
+            mw.setTitle(name);
+            mw.setType(type);
+            if (type == MediaWrapper.TYPE_DIR)
+                directories.add(mw);
+            else
+                media.add(mw);
+        }
+        Collections.sort(directories, MediaComparators.byName);
+        Collections.sort(media, MediaComparators.byName);
+        directories.addAll(media);
+        return directories;
+    }
+
+    /**
+     * @return the type of a file from its extension, TYPE_ALL if it is not to be listed
+     */
+    private static int getFileType(String name, HashSet<String> ignoredExtensions) {
+        final int dotIndex = name.lastIndexOf('.');
+        if (dotIndex == -1)
+            return MediaWrapper.TYPE_ALL;
+        final String extension = name.substring(dotIndex).toLowerCase(Locale.ENGLISH);
+        if (ignoredExtensions.contains(extension.substring(1)))
+            return MediaWrapper.TYPE_ALL;
+        if (Extensions.VIDEO.contains(extension))
+            return MediaWrapper.TYPE_VIDEO;
+        else if (Extensions.AUDIO.contains(extension))
+            return MediaWrapper.TYPE_AUDIO;
+        else if (Extensions.SUBTITLES.contains(extension))
+            return MediaWrapper.TYPE_SUBTITLE;
+        else if (Extensions.PLAYLIST.contains(extension))
+            return MediaWrapper.TYPE_PLAYLIST;
+        return MediaWrapper.TYPE_ALL;
+    }
+
+    private static HashSet<String> parseIgnoreList(String ignoreList) {
+        final HashSet<String> extensions = new HashSet<String>();
+        for (String extension : TextUtils.split(ignoreList, ","))
+            extensions.add(extension);
+        return extensions;
+    }
+}
@@ -32,15 +32,22 @@ import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.view.View;
 
+import org.videolan.libvlc.Media;
 import org.videolan.vlc.MediaDatabase;
 import org.videolan.vlc.MediaWrapper;
 import org.videolan.vlc.R;
 import org.videolan.vlc.util.AndroidDevices;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 
 public class NetworkBrowserFragment extends BaseBrowserFragment {
 
+    /* Shares found by the running discovery */
+    private final HashSet<String> mDiscoveredShares = new HashSet<String>();
+    /* Shares shown from the cache, not found again yet */
+    private final HashSet<String> mCachedShares = new HashSet<String>();
+
     public NetworkBrowserFragment() {
         ROOT = "smb";
         mHandler = new BrowserFragmentHandler(this);
@@ -71,6 +78,7 @@ public class NetworkBrowserFragment extends BaseBrowserFragment {
     @Override
     public void onStop() {
         super.onStop();
+        mHandler.removeCallbacks(mReconcileRunnable);
         getActivity().unregisterReceiver(networkReceiver);
     }
 
@@ -85,7 +93,7 @@ public class NetworkBrowserFragment extends BaseBrowserFragment {
     protected void updateDisplay() {
         if (mRoot)
             updateFavorites();
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyPendingChanges();
         parseSubDirectories();
     }
 
@@ -99,9 +107,73 @@ public class NetworkBrowserFragment extends BaseBrowserFragment {
             }
             mAdapter.addItem("Network favorites", false, true);
         }
+        mHandler.removeCallbacks(mReconcileRunnable);
+        mDiscoveredShares.clear();
+        mCachedShares.clear();
+        final ArrayList<MediaWrapper> shares = NetworkSharesCache.getShares();
+        if (!shares.isEmpty()) {
+            for (MediaWrapper share : shares) {
+                mAdapter.addItem(share, false, true);
+                mCachedShares.add(share.getLocation());
+            }
+            mHandler.sendEmptyMessage(BrowserFragmentHandler.MSG_HIDE_LOADING);
+            if (mReadyToDisplay) {
+                updateEmptyView();
+                mAdapter.notifyPendingChanges();
+            }
+        }
         mMediaBrowser.discoverNetworkShares();
+        mHandler.postDelayed(mReconcileRunnable, NetworkSharesCache.RECONCILE_DELAY);
+    }
+
+    @Override
+    public void onMediaAdded(int index, Media media) {
+        if (mRoot) {
+            final MediaWrapper share = new MediaWrapper(media);
+            final String location = share.getLocation();
+            mDiscoveredShares.add(location);
+            NetworkSharesCache.add(share);
+            if (mCachedShares.remove(location))
+                return; // already shown
+        }
+        super.onMediaAdded(index, media);
     }
 
+    @Override
+    public void onMediaRemoved(int index, Media media) {
+        if (!mRoot) {
+            super.onMediaRemoved(index, media);
+            return;
+        }
+        final String location = media.getUri().toString();
+        mDiscoveredShares.remove(location);
+        mCachedShares.remove(location);
+        NetworkSharesCache.remove(location);
+        removeShare(location);
+    }
+
+    /* Shares are listed before the favorites */
+    private void removeShare(String location) {
+        final int position = mAdapter.getItemPosition(location);
+        if (position != -1) {
+            mAdapter.removeItem(position, mReadyToDisplay);
+            updateEmptyView();
+        }
+    }
+
+    /**
+     * Remove the cached shares the discovery did not find again.
+     */
+    private final Runnable mReconcileRunnable = new Runnable() {
+        @Override
+        public void run() {
+            NetworkSharesCache.reconcile(mDiscoveredShares);
+            for (String location : mCachedShares)
+                removeShare(location);
+            mCachedShares.clear();
+        }
+    };
+
     @Override
     protected String getCategoryTitle() {
         return getString(R.string.network_browsing);
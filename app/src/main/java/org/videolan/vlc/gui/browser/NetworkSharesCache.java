@@ -0,0 +1,84 @@
+/**
+ * **************************************************************************
+ * NetworkSharesCache.java
+ * ****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ * ***************************************************************************
+ */
+package org.videolan.vlc.gui.browser;
+
+import android.os.SystemClock;
+
+import org.videolan.vlc.MediaWrapper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * Network shares found by the last discovery, kept for the whole process so that they can be
+ * shown right away when coming back to the network browser, while a new discovery runs.
+ *
+ * Shares are keyed by location. They expire CACHE_TTL after the last complete discovery.
+ *
+ * Only accessed from the main thread.
+ */
+public class NetworkSharesCache {
+    public final static String TAG = "VLC/NetworkSharesCache";
+
+    private static final long CACHE_TTL = 10 * 60 * 1000; // ms
+    /* Time given to a new discovery to find the cached shares again */
+    public static final long RECONCILE_DELAY = 10 * 1000; // ms
+
+    private static final LinkedHashMap<String, MediaWrapper> sShares = new LinkedHashMap<String, MediaWrapper>();
+    private static long sLastDiscovery = 0;
+
+    /**
+     * @return the cached shares, in discovery order, empty if they expired
+     */
+    public static ArrayList<MediaWrapper> getShares() {
+        if (sLastDiscovery == 0 || SystemClock.elapsedRealtime() - sLastDiscovery > CACHE_TTL) {
+            sShares.clear();
+            sLastDiscovery = 0;
+        }
+        return new ArrayList<MediaWrapper>(sShares.values());
+    }
+
+    public static void add(MediaWrapper share) {
+        sShares.put(share.getLocation(), share);
+        if (sLastDiscovery == 0)
+            sLastDiscovery = SystemClock.elapsedRealtime();
+    }
+
+    public static void remove(String location) {
+        sShares.remove(location);
+    }
+
+    /**
+     * Drop the shares a discovery did not find again, and restart the expiration delay.
+     *
+     * @param discovered locations of the shares found by the discovery
+     */
+    public static void reconcile(Set<String> discovered) {
+        for (Iterator<String> it = sShares.keySet().iterator(); it.hasNext();) {
+            if (!discovered.contains(it.next()))
+                it.remove();
+        }
+        sLastDiscovery = SystemClock.elapsedRealtime();
+    }
+}
@@ -110,6 +110,11 @@ public class StorageBrowserAdapter extends BaseBrowserAdapter {
         addItem(storage, notify, top);
     }
 
+    @Override
+    protected Object createItem(MediaWrapper mw){
+        return new Storage(mw.getUri());
+    }
+
     private void removeDir(final String path) {
         new Thread(new Runnable() {
             @Override
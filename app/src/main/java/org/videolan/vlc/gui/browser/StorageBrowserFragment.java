@@ -111,6 +111,11 @@ public class StorageBrowserFragment extends FileBrowserFragment implements View.
         super.update();
     }
 
+    @Override
+    protected boolean showFiles() {
+        return false;
+    }
+
     @Override
     public void onMediaAdded(int index, Media media) {
         if (media.getType() != Media.Type.Directory)
@@ -125,7 +130,7 @@ public class StorageBrowserFragment extends FileBrowserFragment implements View.
                 mSavedPosition = 0;
             }
         }
-        mAdapter.notifyDataSetChanged();
+        mAdapter.notifyPendingChanges();
     }
 
     public void browse (MediaWrapper media, int position, boolean scanned){
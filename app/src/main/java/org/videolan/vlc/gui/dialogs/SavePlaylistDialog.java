@@ -119,16 +119,8 @@ public class SavePlaylistDialog extends DialogFragment implements AdapterView.On
     private void savePlaylist() {
         new Thread(new Runnable() {
             public void run() {
-                final MediaDatabase db = MediaDatabase.getInstance();
                 final String name = mEditText.getText().toString().trim();
-                if (db.playlistExists(name))
-                    db.playlistDelete(name);
-                db.playlistAdd(name);
-                MediaWrapper mw;
-                for (int i = 0 ; i< mTracks.size() ; ++i){
-                    mw = mTracks.get(i);
-                    db.playlistInsertItem(name, i, mw.getLocation());
-                }
+                MediaDatabase.getInstance().playlistSave(name, mTracks);
             }
         }).start();
         dismiss();
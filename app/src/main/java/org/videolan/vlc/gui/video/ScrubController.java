@@ -0,0 +1,118 @@
+/*****************************************************************************
+ * ScrubController.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.gui.video;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Coalesces the seeks requested while scrubbing.
+ *
+ * At most one seek is issued every MIN_SEEK_INTERVAL ms. A request coming sooner is delayed,
+ * and replaced by any later request (latest wins). The position given when scrubbing ends is
+ * always sought.
+ *
+ * Must be used from the main thread.
+ */
+public class ScrubController {
+    public final static String TAG = "VLC/ScrubController";
+
+    private static final long MIN_SEEK_INTERVAL = 250; // ms
+
+    public interface Seeker {
+        void seek(long position, long length);
+    }
+
+    private final Seeker mSeeker;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private long mLastSeekTime = 0;
+    private long mLastPosition = -1;
+    private boolean mPending = false;
+    private long mPendingPosition, mPendingLength;
+    private int mIssued = 0;
+    private int mDropped = 0;
+
+    public ScrubController(Seeker seeker) {
+        mSeeker = seeker;
+    }
+
+    /**
+     * Request a seek while scrubbing.
+     */
+    public void scrub(long position, long length) {
+        final long delay = mLastSeekTime + MIN_SEEK_INTERVAL - SystemClock.uptimeMillis();
+        if (mPending)
+            ++mDropped;
+        else if (delay > 0)
+            mHandler.postDelayed(mPendingSeek, delay);
+        if (delay > 0 || mPending) {
+            mPending = true;
+            mPendingPosition = position;
+            mPendingLength = length;
+        } else
+            issue(position, length);
+    }
+
+    /**
+     * End scrubbing at position, seeking to it right away unless it was the last sought one.
+     */
+    public void release(long position, long length) {
+        final boolean pending = mPending;
+        cancel();
+        if (pending || position != mLastPosition)
+            issue(position, length);
+    }
+
+    /**
+     * Drop the delayed seek, if any.
+     */
+    public void cancel() {
+        if (mPending) {
+            ++mDropped;
+            mPending = false;
+            mHandler.removeCallbacks(mPendingSeek);
+        }
+    }
+
+    public int getIssuedCount() {
+        return mIssued;
+    }
+
+    public int getDroppedCount() {
+        return mDropped;
+    }
+
+    private void issue(long position, long length) {
+        mLastSeekTime = SystemClock.uptimeMillis();
+        mLastPosition = position;
+        ++mIssued;
+        mSeeker.seek(position, length);
+    }
+
+    private final Runnable mPendingSeek = new Runnable() {
+        @Override
+        public void run() {
+            mPending = false;
+            issue(mPendingPosition, mPendingLength);
+        }
+    };
+}
@@ -0,0 +1,151 @@
+/*****************************************************************************
+ * SurfaceLayout.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.gui.video;
+
+/**
+ * Size of the video surfaces and of the frame cropping them, for a display size, a video
+ * geometry and a SURFACE_* scaling mode.
+ *
+ * Immutable, and does not depend on Android, so that layouts can be compared to skip the
+ * ones which would not change anything.
+ */
+public final class SurfaceLayout {
+    public static final int SURFACE_BEST_FIT = 0;
+    public static final int SURFACE_FIT_HORIZONTAL = 1;
+    public static final int SURFACE_FIT_VERTICAL = 2;
+    public static final int SURFACE_FILL = 3;
+    public static final int SURFACE_16_9 = 4;
+    public static final int SURFACE_4_3 = 5;
+    public static final int SURFACE_ORIGINAL = 6;
+
+    public final int surfaceWidth;
+    public final int surfaceHeight;
+    public final int frameWidth;
+    public final int frameHeight;
+
+    public SurfaceLayout(int surfaceWidth, int surfaceHeight, int frameWidth, int frameHeight) {
+        this.surfaceWidth = surfaceWidth;
+        this.surfaceHeight = surfaceHeight;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+    }
+
+    /**
+     * @param mode one of the SURFACE_* modes
+     * @param displayWidth width of the display, as reported by the window
+     * @param displayHeight height of the display, as reported by the window
+     * @param portrait true if the display is in portrait orientation, the window size doesn't
+     *                 always take it into account
+     * @return the layout, or null if the display or the video has no size
+     */
+    public static SurfaceLayout compute(int mode, int displayWidth, int displayHeight, boolean portrait,
+                                        int videoWidth, int videoHeight, int visibleWidth, int visibleHeight,
+                                        int sarNum, int sarDen) {
+        double dw = displayWidth, dh = displayHeight;
+        if (displayWidth > displayHeight && portrait || displayWidth < displayHeight && !portrait) {
+            dw = displayHeight;
+            dh = displayWidth;
+        }
+
+        if (dw * dh == 0 || videoWidth * videoHeight == 0 || visibleWidth * visibleHeight == 0)
+            return null;
+
+        // compute the aspect ratio
+        double ar, vw;
+        if (sarDen == sarNum) {
+            /* No indication about the density, assuming 1:1 */
+            vw = visibleWidth;
+            ar = (double)visibleWidth / (double)visibleHeight;
+        } else {
+            /* Use the specified aspect ratio */
+            vw = visibleWidth * (double)sarNum / sarDen;
+            ar = vw / visibleHeight;
+        }
+
+        // compute the display aspect ratio
+        double dar = dw / dh;
+
+        switch (mode) {
+            case SURFACE_BEST_FIT:
+                if (dar < ar)
+                    dh = dw / ar;
+                else
+                    dw = dh * ar;
+                break;
+            case SURFACE_FIT_HORIZONTAL:
+                dh = dw / ar;
+                break;
+            case SURFACE_FIT_VERTICAL:
+                dw = dh * ar;
+                break;
+            case SURFACE_FILL:
+                break;
+            case SURFACE_16_9:
+                ar = 16.0 / 9.0;
+                if (dar < ar)
+                    dh = dw / ar;
+                else
+                    dw = dh * ar;
+                break;
+            case SURFACE_4_3:
+                ar = 4.0 / 3.0;
+                if (dar < ar)
+                    dh = dw / ar;
+                else
+                    dw = dh * ar;
+                break;
+            case SURFACE_ORIGINAL:
+                dh = visibleHeight;
+                dw = vw;
+                break;
+        }
+
+        /* the surface shows the whole video, the frame crops it to its visible part */
+        return new SurfaceLayout((int) Math.ceil(dw * videoWidth / visibleWidth),
+                (int) Math.ceil(dh * videoHeight / visibleHeight),
+                (int) Math.floor(dw), (int) Math.floor(dh));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof SurfaceLayout))
+            return false;
+        final SurfaceLayout other = (SurfaceLayout) o;
+        return surfaceWidth == other.surfaceWidth && surfaceHeight == other.surfaceHeight
+                && frameWidth == other.frameWidth && frameHeight == other.frameHeight;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = surfaceWidth;
+        result = 31 * result + surfaceHeight;
+        result = 31 * result + frameWidth;
+        result = 31 * result + frameHeight;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "surface " + surfaceWidth + "x" + surfaceHeight + ", frame " + frameWidth + "x" + frameHeight;
+    }
+}
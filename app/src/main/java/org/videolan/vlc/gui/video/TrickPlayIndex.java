@@ -0,0 +1,318 @@
+/*****************************************************************************
+ * TrickPlayIndex.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.gui.video;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.videolan.vlc.gui.audio.AudioUtil;
+import org.videolan.vlc.util.MurmurHash;
+import org.videolan.vlc.util.Trace;
+import org.videolan.vlc.util.Util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Low resolution frames of a video taken at fixed intervals, to preview the seek position
+ * while scrubbing.
+ *
+ * The frames are extracted in the background, compressed as JPEG and packed one after the
+ * other in a single file of AudioUtil.TRICKPLAY_DIR, after an index of their offsets. Looking
+ * a frame up only decodes one small JPEG from memory.
+ *
+ * File format: magic, version, interval (ms), frame count, frame count + 1 offsets in the
+ * data, data. The modification date of a file is its last use, the directory is kept under
+ * MAX_CACHE_SIZE by deleting the oldest ones.
+ */
+public class TrickPlayIndex {
+    public final static String TAG = "VLC/TrickPlayIndex";
+
+    private static final int MAGIC = 0x564c4354;
+    private static final int VERSION = 1;
+    private static final long MIN_INTERVAL = 10000; // ms
+    private static final int MAX_FRAMES = 300;
+    private static final int FRAME_WIDTH = 160;
+    private static final int JPEG_QUALITY = 60;
+    /* Above this size, the least recently used indexes are deleted */
+    private static final long MAX_CACHE_SIZE = 16 * 1024 * 1024;
+
+    public interface Callback {
+        void onIndexReady(TrickPlayIndex index);
+    }
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    /* Incremented from the main thread to cancel the running request */
+    private static volatile int sGeneration = 0;
+
+    private final long mInterval;
+    /* mOffsets[i] to mOffsets[i + 1] is the JPEG data of frame i, empty if it is missing */
+    private final int[] mOffsets;
+    private final byte[] mData;
+    private int mCachedFrame = -1;
+    private Bitmap mCachedBitmap = null;
+
+    private TrickPlayIndex(long interval, int[] offsets, byte[] data) {
+        mInterval = interval;
+        mOffsets = offsets;
+        mData = data;
+    }
+
+    /**
+     * @return the frame closest before time, or null if it is missing
+     */
+    public Bitmap getFrame(long time) {
+        final int frame = (int) Math.max(0, Math.min(time / mInterval, mOffsets.length - 2));
+        if (frame != mCachedFrame) {
+            final int length = mOffsets[frame + 1] - mOffsets[frame];
+            mCachedBitmap = length > 0 ? BitmapFactory.decodeByteArray(mData, mOffsets[frame], length) : null;
+            mCachedFrame = frame;
+        }
+        return mCachedBitmap;
+    }
+
+    /**
+     * @return true if frames can be extracted from this media: only local files are indexed,
+     * and the frames are extracted by MediaMetadataRetriever.
+     */
+    public static boolean canIndex(Uri uri) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1 && uri != null &&
+                TextUtils.equals(uri.getScheme(), "file") && AudioUtil.TRICKPLAY_DIR != null;
+    }
+
+    /**
+     * Load the index of a local video, or build it if it is not stored yet. A new request
+     * cancels the previous one.
+     *
+     * @param uri a local video, see {@link #canIndex(Uri)}
+     * @param length video length in ms
+     * @param callback called on the main thread once the index is available
+     */
+    public static void request(final Uri uri, final long length, final Callback callback) {
+        final int generation = ++sGeneration;
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != sGeneration)
+                    return;
+                final File video = new File(uri.getPath());
+                final String prefix = getFilePrefix(uri);
+                final File file = new File(AudioUtil.TRICKPLAY_DIR, prefix + video.lastModified());
+                TrickPlayIndex index = file.exists() ? load(file) : null;
+                if (index != null)
+                    file.setLastModified(System.currentTimeMillis());
+                else {
+                    index = build(video.getPath(), length, generation);
+                    if (index != null) {
+                        index.save(file, prefix);
+                        trimCache(file);
+                    }
+                }
+                if (index == null)
+                    return;
+                final TrickPlayIndex result = index;
+                sHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == sGeneration)
+                            callback.onIndexReady(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancel the running request, its callback won't be called.
+     */
+    public static void cancel() {
+        ++sGeneration;
+    }
+
+    private static String getFilePrefix(Uri uri) {
+        final int hash = MurmurHash.hash32(uri.toString());
+        return (hash >= 0 ? "" + hash : "m" + (-hash)) + "_";
+    }
+
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+    private static TrickPlayIndex build(String path, long length, int generation) {
+        if (length <= 0)
+            return null;
+        final long start = Trace.begin();
+        final long interval = Math.max(MIN_INTERVAL, length / MAX_FRAMES);
+        final int count = (int) (length / interval) + 1;
+        final int[] offsets = new int[count + 1];
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(path);
+            for (int i = 0; i < count; ++i) {
+                if (generation != sGeneration)
+                    return null;
+                final Bitmap frame = retriever.getFrameAtTime(i * interval * 1000,
+                        MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+                if (frame != null && frame.getWidth() > 0) {
+                    final Bitmap tile = Bitmap.createScaledBitmap(frame, FRAME_WIDTH,
+                            Math.max(1, FRAME_WIDTH * frame.getHeight() / frame.getWidth()), true);
+                    tile.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, data);
+                    if (tile != frame)
+                        tile.recycle();
+                    frame.recycle();
+                }
+                offsets[i + 1] = data.size();
+            }
+        } catch (RuntimeException e) {
+            /* setDataSource fails on the files Android can't open */
+            Log.w(TAG, "Couldn't extract frames from " + path, e);
+            return null;
+        } finally {
+            retriever.release();
+        }
+        Trace.end("TrickPlayIndex.build", start);
+        return new TrickPlayIndex(interval, offsets, data.toByteArray());
+    }
+
+    /**
+     * @return the stored index, or null if it can't be read. An invalid file is deleted.
+     */
+    private static TrickPlayIndex load(File file) {
+        DataInputStream dis = null;
+        TrickPlayIndex index = null;
+        try {
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            index = read(dis, file.length());
+        } catch (IOException e) {
+            /* truncated */
+        } finally {
+            Util.close(dis);
+        }
+        if (index == null) {
+            Log.w(TAG, "Invalid index " + file + ", rebuilding it");
+            file.delete();
+        }
+        return index;
+    }
+
+    private static TrickPlayIndex read(DataInputStream dis, long fileLength) throws IOException {
+        if (dis.readInt() != MAGIC || dis.readInt() != VERSION)
+            return null;
+        final long interval = dis.readLong();
+        final int count = dis.readInt();
+        if (interval <= 0 || count <= 0 || count > MAX_FRAMES + 1)
+            return null;
+        /* getFrame() relies on increasing offsets, starting at 0, within the data */
+        final int[] offsets = new int[count + 1];
+        for (int i = 0; i <= count; ++i) {
+            offsets[i] = dis.readInt();
+            if (i == 0 ? offsets[i] != 0 : offsets[i] < offsets[i - 1])
+                return null;
+        }
+        if (offsets[count] > fileLength)
+            return null;
+        final byte[] data = new byte[offsets[count]];
+        dis.readFully(data);
+        if (dis.read() != -1)
+            return null;
+        return new TrickPlayIndex(interval, offsets, data);
+    }
+
+    /**
+     * Store the index, replacing the previous ones of the same video.
+     */
+    private void save(File file, String prefix) {
+        final File[] previous = file.getParentFile().listFiles();
+        if (previous != null) {
+            for (File f : previous)
+                if (f.getName().startsWith(prefix))
+                    f.delete();
+        }
+        final File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream dos = null;
+        boolean saved = false;
+        try {
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(mInterval);
+            dos.writeInt(mOffsets.length - 1);
+            for (int offset : mOffsets)
+                dos.writeInt(offset);
+            dos.write(mData);
+            saved = true;
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't save " + file, e);
+        } finally {
+            saved &= Util.close(dos);
+        }
+        if (!saved || !tmp.renameTo(file))
+            tmp.delete();
+    }
+
+    /**
+     * Delete the least recently used indexes until the directory fits in MAX_CACHE_SIZE.
+     *
+     * @param keep the index just saved
+     */
+    private static void trimCache(File keep) {
+        final File[] files = keep.getParentFile().listFiles();
+        if (files == null)
+            return;
+        long size = 0;
+        for (File f : files)
+            size += f.length();
+        if (size <= MAX_CACHE_SIZE)
+            return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                final long lhsDate = lhs.lastModified(), rhsDate = rhs.lastModified();
+                return lhsDate < rhsDate ? -1 : (lhsDate == rhsDate ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && size > MAX_CACHE_SIZE; ++i) {
+            if (files[i].equals(keep))
+                continue;
+            final long length = files[i].length();
+            if (files[i].delete())
+                size -= length;
+        }
+    }
+}
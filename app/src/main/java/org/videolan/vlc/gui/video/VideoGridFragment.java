@@ -75,7 +75,6 @@ import org.videolan.vlc.util.WeakHandler;
 import org.videolan.vlc.widget.SwipeRefreshLayout;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
@@ -187,6 +186,7 @@ public class VideoGridFragment extends MediaBrowserFragment implements ISortable
         mGVFirstVisiblePos = mGridView.getFirstVisiblePosition();
         mMediaLibrary.setBrowser(null);
         mMediaLibrary.removeUpdateHandler(mHandler);
+        MediaDatabase.getInstance().removeResumeStatesHandler(mHandler);
 
         /* Stop the thumbnailer */
         if (mThumbnailer != null)
@@ -207,9 +207,9 @@ public class VideoGridFragment extends MediaBrowserFragment implements ISortable
             mViewNomedia.setVisibility(View.GONE);
             focusHelper(false);
         }
-        //Get & set times
-        HashMap<String, Long> times = MediaDatabase.getInstance().getVideoTimes();
-        mVideoAdapter.setTimes(times);
+        //Get & set times, again once they are loaded if they are not yet
+        MediaDatabase.getInstance().addResumeStatesHandler(mHandler);
+        updateTimes();
         mGridView.setSelection(mGVFirstVisiblePos);
         updateViewMode();
         if (mGroup == null && refresh)
@@ -415,6 +415,11 @@ public class VideoGridFragment extends MediaBrowserFragment implements ISortable
         } catch (BrokenBarrierException e) {
         }
     }
+
+    public void updateTimes() {
+        mVideoAdapter.setTimes(MediaDatabase.getInstance().getVideoTimes());
+    }
+
     private void focusHelper(boolean idIsEmpty) {
         View parent = getView();
         if (getActivity() == null || !(getActivity() instanceof MainActivity))
@@ -576,7 +581,7 @@ public class VideoGridFragment extends MediaBrowserFragment implements ISortable
                 Util.recursiveDelete(VLCApplication.getAppContext(), new File(path));
             }
         }).start();
-        mMediaLibrary.getMediaItems().remove(media);
+        mMediaLibrary.removeMediaItem(media);
         mVideoAdapter.remove(media);
         if (mService != null) {
             final List<String> list = mService.getMediaLocations();
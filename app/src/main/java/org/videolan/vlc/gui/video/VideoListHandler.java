@@ -2,6 +2,7 @@ package org.videolan.vlc.gui.video;
 
 import android.os.Message;
 
+import org.videolan.vlc.MediaDatabase;
 import org.videolan.vlc.MediaLibrary;
 import org.videolan.vlc.interfaces.IVideoBrowser;
 import org.videolan.vlc.util.WeakHandler;
@@ -26,6 +27,9 @@ public class VideoListHandler extends WeakHandler<IVideoBrowser> {
             case MediaLibrary.MEDIA_ITEMS_UPDATED:
                 owner.updateList();
                 break;
+            case MediaDatabase.RESUME_STATES_LOADED:
+                owner.updateTimes();
+                break;
         }
     }
 };
\ No newline at end of file
@@ -33,8 +33,10 @@ import android.content.SharedPreferences.Editor;
 import android.content.pm.ActivityInfo;
 import android.content.res.Configuration;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.PixelFormat;
+import android.graphics.drawable.BitmapDrawable;
 import android.media.AudioManager;
 import android.media.MediaRouter;
 import android.net.Uri;
@@ -105,6 +107,7 @@ import org.videolan.vlc.VLCApplication;
 import org.videolan.vlc.gui.MainActivity;
 import org.videolan.vlc.gui.PlaybackServiceActivity;
 import org.videolan.vlc.gui.PreferencesActivity;
+import org.videolan.vlc.gui.ProgressTicker;
 import org.videolan.vlc.gui.browser.FilePickerActivity;
 import org.videolan.vlc.gui.dialogs.AdvOptionsDialog;
 import org.videolan.vlc.interfaces.IDelayController;
@@ -165,14 +168,7 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
     private boolean mAskResume = true;
     private GestureDetectorCompat mDetector;
 
-    private static final int SURFACE_BEST_FIT = 0;
-    private static final int SURFACE_FIT_HORIZONTAL = 1;
-    private static final int SURFACE_FIT_VERTICAL = 2;
-    private static final int SURFACE_FILL = 3;
-    private static final int SURFACE_16_9 = 4;
-    private static final int SURFACE_4_3 = 5;
-    private static final int SURFACE_ORIGINAL = 6;
-    private int mCurrentSize = SURFACE_BEST_FIT;
+    private int mCurrentSize = SurfaceLayout.SURFACE_BEST_FIT;
 
     private SharedPreferences mSettings;
 
@@ -184,7 +180,6 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
     private static final int OVERLAY_TIMEOUT = 4000;
     private static final int OVERLAY_INFINITE = -1;
     private static final int FADE_OUT = 1;
-    private static final int SHOW_PROGRESS = 2;
     private static final int FADE_OUT_INFO = 3;
     private static final int START_PLAYBACK = 4;
     private static final int AUDIO_SERVICE_CONNECTION_FAILED = 5;
@@ -193,6 +188,9 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
     private static final int HW_ERROR = 1000; // TODO REMOVE
 
     private boolean mDragging;
+    /* Seek preview frames of the current video, and the video they are requested for */
+    private TrickPlayIndex mTrickPlayIndex;
+    private String mTrickPlayLocation;
     private boolean mShowing;
     private DelayState mDelay = DelayState.OFF;
     private int mUiVisibility = -1;
@@ -245,6 +243,10 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
     private int mVideoVisibleWidth;
     private int mSarNum;
     private int mSarDen;
+    /* last layout applied to mLayoutSurface, and window size given to the vout */
+    private SurfaceLayout mSurfaceLayout = null;
+    private SurfaceView mLayoutSurface = null;
+    private int mWindowWidth = -1, mWindowHeight = -1;
 
     //Volume
     private AudioManager mAudioManager;
@@ -593,6 +595,13 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
             Util.commitPreferences(mSettings.edit().putBoolean(PreferencesActivity.VIDEO_RESTORE, true));
             switchToAudioMode(false);
         }
+        mScrubController.cancel();
+        mProgressTicker.stop();
+        TrickPlayIndex.cancel();
+        mTrickPlayLocation = null;
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Scrubbing seeks: " + mScrubController.getIssuedCount() + " issued, "
+                    + mScrubController.getDroppedCount() + " dropped");
         stopPlayback();
 
         // Dismiss the presentation when the activity is not visible.
@@ -663,6 +672,7 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
         }
         vlcVout.addCallback(this);
         vlcVout.attachViews();
+        resetSurfaceLayout();
 
         mPlaybackStarted = true;
 
@@ -752,15 +762,14 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
         SharedPreferences.Editor editor = mSettings.edit();
         // Save position
         if (time >= 0 && mCanSeek) {
-            if(MediaDatabase.getInstance().mediaItemExists(mUri)) {
-                MediaDatabase.getInstance().updateMedia(
-                        mUri,
-                        MediaDatabase.mediaColumn.MEDIA_TIME,
-                        time);
-            } else {
-                // Video file not in media library, store time just for onResume()
+            // Written in the background, and only if the media is in the media library
+            MediaDatabase.getInstance().queueMediaUpdate(
+                    mUri,
+                    MediaDatabase.mediaColumn.MEDIA_TIME,
+                    time);
+            // Video file not in media library, store time just for onResume()
+            if (MediaDatabase.getInstance().getResumeState(mUri) == null)
                 editor.putLong(PreferencesActivity.VIDEO_RESUME_TIME, time);
-            }
         }
         if(isPaused)
             Log.d(TAG, "Video paused - saving flag");
@@ -788,6 +797,9 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
 
         Util.commitPreferences(editor);
 
+        // Write the playback state now, without waiting for it
+        MediaDatabase.getInstance().flushUpdates();
+
         if (AndroidUtil.isHoneycombOrLater() && mOnLayoutChangeListener != null)
             mSurfaceFrame.removeOnLayoutChangeListener(mOnLayoutChangeListener);
     }
@@ -1264,11 +1276,22 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
         hideInfo(0);
     }
 
+    /**
+     * Show the time and the preview frame of a seek position in the info view
+     */
+    private void showSeekPreview(long time) {
+        final Bitmap frame = mTrickPlayIndex.getFrame(time);
+        showInfo(Strings.millisToString(time), 1000);
+        mInfo.setCompoundDrawablesWithIntrinsicBounds(null,
+                frame != null ? new BitmapDrawable(getResources(), frame) : null, null, null);
+    }
+
     private void fadeOutInfo() {
         if (mInfo.getVisibility() == View.VISIBLE)
             mInfo.startAnimation(AnimationUtils.loadAnimation(
                     VideoPlayerActivity.this, android.R.anim.fade_out));
         mInfo.setVisibility(View.INVISIBLE);
+        mInfo.setCompoundDrawables(null, null, null, null);
 
         if (mPresentation == null) {
             if (mVerticalBar.getVisibility() == View.VISIBLE) {
@@ -1333,6 +1356,7 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
                     onPlaying();
                 break;
             case MediaPlayer.Event.Paused:
+                syncProgressTicker();
                 updateOverlayPausePlay();
                 break;
             case MediaPlayer.Event.Stopped:
@@ -1348,6 +1372,13 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
                 encounteredError();
                 break;
             case MediaPlayer.Event.TimeChanged:
+                mProgressTicker.onTimeChanged(event.getTimeChanged());
+                /* no LengthChanged event, the length may only be known after playback started */
+                if (!mPlayerLengthKnown && mService.getLength() > 0) {
+                    mPlayerLengthKnown = true;
+                    mProgressTicker.setLength(mService.getLength());
+                    mLastProgressSecond = -1;
+                }
                 break;
             case MediaPlayer.Event.PositionChanged:
                 if (!mCanSeek)
@@ -1382,13 +1413,6 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
                 case FADE_OUT:
                     hideOverlay(false);
                     break;
-                case SHOW_PROGRESS:
-                    int pos = setOverlayProgress();
-                    if (canShowProgress()) {
-                        msg = mHandler.obtainMessage(SHOW_PROGRESS);
-                        mHandler.sendMessageDelayed(msg, 1000 - (pos % 1000));
-                    }
-                    break;
                 case FADE_OUT_INFO:
                     fadeOutInfo();
                     break;
@@ -1415,17 +1439,70 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
         }
     });
 
-    private boolean canShowProgress() {
-        return !mDragging && mShowing && mService != null &&  mService.isPlaying();
+    /**
+     * Moves the seekbar on each frame while the overlay is shown, the labels are only updated
+     * when the displayed second changes.
+     */
+    private final ProgressTicker mProgressTicker = new ProgressTicker(new ProgressTicker.Listener() {
+        @Override
+        public void onTick(long time) {
+            if (mDragging || mService == null)
+                return;
+            final long second = time / 1000;
+            setOverlayProgress(second != mLastProgressSecond);
+            mLastProgressSecond = second;
+        }
+    });
+    private long mLastProgressSecond = -1;
+    /* false while the ticker length is unknown or comes from the media library */
+    private boolean mPlayerLengthKnown = false;
+
+    private void syncProgressTicker() {
+        if (mService == null)
+            return;
+        long length = mService.getLength();
+        mPlayerLengthKnown = length > 0;
+        if (length == 0) {
+            final MediaDatabase.ResumeState state = MediaDatabase.getInstance().getResumeState(mUri);
+            if (state != null)
+                length = state.length;
+        }
+        mLastProgressSecond = -1;
+        mProgressTicker.sync(mService.getTime(), length, mService.isPlaying(), mService.getRate());
     }
 
     private void onPlaying() {
+        syncProgressTicker();
         stopLoading();
         showOverlay();
         setESTracks();
         updateNavStatus();
     }
 
+    /**
+     * Load or build the seek preview frames of the current media, on its first scrub so
+     * that playback start does not compete with the frame extraction.
+     */
+    private void loadTrickPlayIndex() {
+        final MediaWrapper media = mService != null ? mService.getCurrentMediaWrapper() : null;
+        if (media == null || TextUtils.equals(media.getLocation(), mTrickPlayLocation))
+            return;
+        mTrickPlayIndex = null;
+        final long length = mService.getLength();
+        /* the length is unknown until the media is parsed, try again on the next scrub */
+        if (length <= 0)
+            return;
+        mTrickPlayLocation = media.getLocation();
+        if (!TrickPlayIndex.canIndex(media.getUri()))
+            return;
+        TrickPlayIndex.request(media.getUri(), length, new TrickPlayIndex.Callback() {
+            @Override
+            public void onIndexReady(TrickPlayIndex index) {
+                mTrickPlayIndex = index;
+            }
+        });
+    }
+
     private void endReached() {
         if (mService == null)
             return;
@@ -1540,6 +1617,15 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
         exitOK();
     }
 
+    /**
+     * Reset the last applied layout, so that the next changeSurfaceLayout() applies it again
+     */
+    private void resetSurfaceLayout() {
+        mSurfaceLayout = null;
+        mLayoutSurface = null;
+        mWindowWidth = mWindowHeight = -1;
+    }
+
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
     private void changeSurfaceLayout() {
         int sw;
@@ -1554,12 +1640,13 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
             sh = mPresentation.getWindow().getDecorView().getHeight();
         }
 
-        if (mService != null) {
+        if (mService != null && (sw != mWindowWidth || sh != mWindowHeight)) {
             final IVLCVout vlcVout = mService.getVLCVout();
             vlcVout.setWindowSize(sw, sh);
+            mWindowWidth = sw;
+            mWindowHeight = sh;
         }
 
-        double dw = sw, dh = sh;
         boolean isPortrait;
 
         if (mPresentation == null) {
@@ -1569,67 +1656,15 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
             isPortrait = false;
         }
 
-        if (sw > sh && isPortrait || sw < sh && !isPortrait) {
-            dw = sh;
-            dh = sw;
-        }
+        final SurfaceLayout layout = SurfaceLayout.compute(mCurrentSize, sw, sh, isPortrait,
+                mVideoWidth, mVideoHeight, mVideoVisibleWidth, mVideoVisibleHeight, mSarNum, mSarDen);
 
         // sanity check
-        if (dw * dh == 0 || mVideoWidth * mVideoHeight == 0) {
+        if (layout == null) {
             Log.e(TAG, "Invalid surface size");
             return;
         }
 
-        // compute the aspect ratio
-        double ar, vw;
-        if (mSarDen == mSarNum) {
-            /* No indication about the density, assuming 1:1 */
-            vw = mVideoVisibleWidth;
-            ar = (double)mVideoVisibleWidth / (double)mVideoVisibleHeight;
-        } else {
-            /* Use the specified aspect ratio */
-            vw = mVideoVisibleWidth * (double)mSarNum / mSarDen;
-            ar = vw / mVideoVisibleHeight;
-        }
-
-        // compute the display aspect ratio
-        double dar = dw / dh;
-
-        switch (mCurrentSize) {
-            case SURFACE_BEST_FIT:
-                if (dar < ar)
-                    dh = dw / ar;
-                else
-                    dw = dh * ar;
-                break;
-            case SURFACE_FIT_HORIZONTAL:
-                dh = dw / ar;
-                break;
-            case SURFACE_FIT_VERTICAL:
-                dw = dh * ar;
-                break;
-            case SURFACE_FILL:
-                break;
-            case SURFACE_16_9:
-                ar = 16.0 / 9.0;
-                if (dar < ar)
-                    dh = dw / ar;
-                else
-                    dw = dh * ar;
-                break;
-            case SURFACE_4_3:
-                ar = 4.0 / 3.0;
-                if (dar < ar)
-                    dh = dw / ar;
-                else
-                    dw = dh * ar;
-                break;
-            case SURFACE_ORIGINAL:
-                dh = mVideoVisibleHeight;
-                dw = vw;
-                break;
-        }
-
         SurfaceView surface;
         SurfaceView subtitlesSurface;
         FrameLayout surfaceFrame;
@@ -1644,18 +1679,24 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
             surfaceFrame = mPresentation.mSurfaceFrame;
         }
 
+        /* Setting the same layout params again would only trigger a new layout pass */
+        if (layout.equals(mSurfaceLayout) && surface == mLayoutSurface)
+            return;
+        mSurfaceLayout = layout;
+        mLayoutSurface = surface;
+
         // set display size
         LayoutParams lp = surface.getLayoutParams();
-        lp.width  = (int) Math.ceil(dw * mVideoWidth / mVideoVisibleWidth);
-        lp.height = (int) Math.ceil(dh * mVideoHeight / mVideoVisibleHeight);
+        lp.width  = layout.surfaceWidth;
+        lp.height = layout.surfaceHeight;
         surface.setLayoutParams(lp);
         if (subtitlesSurface != null)
             subtitlesSurface.setLayoutParams(lp);
 
         // set frame size (crop if necessary)
         lp = surfaceFrame.getLayoutParams();
-        lp.width = (int) Math.floor(dw);
-        lp.height = (int) Math.floor(dh);
+        lp.width = layout.frameWidth;
+        lp.height = layout.frameHeight;
         surfaceFrame.setLayoutParams(lp);
 
         surface.invalidate();
@@ -1914,21 +1955,34 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
         public void onStartTrackingTouch(SeekBar seekBar) {
             mDragging = true;
             showOverlayTimeout(OVERLAY_INFINITE);
+            loadTrickPlayIndex();
         }
 
         @Override
         public void onStopTrackingTouch(SeekBar seekBar) {
             mDragging = false;
+            if (mCanSeek && mService != null) {
+                final long position = seekBar.getProgress();
+                mForcedTime = position;
+                mLastTime = mService.getTime();
+                mScrubController.release(position, mService.getLength());
+            }
             showOverlay(true);
         }
 
         @Override
         public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
             if (fromUser && mCanSeek) {
-                seek(progress);
+                if (mDragging)
+                    scrub(progress);
+                else
+                    seek(progress);
                 setOverlayProgress();
                 mTime.setText(Strings.millisToString(progress));
-                showInfo(Strings.millisToString(progress));
+                if (mDragging && mTrickPlayIndex != null)
+                    showSeekPreview(progress);
+                else
+                    showInfo(Strings.millisToString(progress));
             }
         }
     };
@@ -2017,7 +2071,7 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
                     public boolean onTrackSelected(int trackID) {
                         if (trackID < -1 || mService == null)
                             return false;
-                        MediaDatabase.getInstance().updateMedia(
+                        MediaDatabase.getInstance().queueMediaUpdate(
                                 mUri,
                                 MediaDatabase.mediaColumn.MEDIA_AUDIOTRACK,
                                 trackID);
@@ -2036,7 +2090,7 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
                         if (trackID < -1 || mService == null)
                             return false;
 
-                        MediaDatabase.getInstance().updateMedia(
+                        MediaDatabase.getInstance().queueMediaUpdate(
                                 mUri,
                                 MediaDatabase.mediaColumn.MEDIA_SPUTRACK,
                                 trackID);
@@ -2088,7 +2142,9 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
     }
 
     private long getTime() {
-        long time = mService.getTime();
+        long time = mProgressTicker.getTime();
+        if (time < 0)
+            time = mService.getTime();
         if (mForcedTime != -1 && mLastTime != -1) {
             /* XXX: After a seek, mService.getTime can return the position before or after
              * the seek position. Therefore we return mForcedTime in order to avoid the seekBar
@@ -2112,8 +2168,30 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
     }
 
     private void seek(long position, float length) {
+        mScrubController.cancel();
+        mForcedTime = position;
+        mLastTime = mService.getTime();
+        seekPlayer(position, length);
+    }
+
+    /**
+     * Seek while dragging the seekbar, the seeks are coalesced by mScrubController
+     */
+    private void scrub(long position) {
         mForcedTime = position;
         mLastTime = mService.getTime();
+        mScrubController.scrub(position, mService.getLength());
+    }
+
+    private final ScrubController mScrubController = new ScrubController(new ScrubController.Seeker() {
+        @Override
+        public void seek(long position, long length) {
+            if (mService != null)
+                seekPlayer(position, length);
+        }
+    });
+
+    private void seekPlayer(long position, float length) {
         if (length == 0f)
             mService.setTime(position);
         else
@@ -2159,32 +2237,32 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
     };
 
     private void resizeVideo() {
-        if (mCurrentSize < SURFACE_ORIGINAL) {
+        if (mCurrentSize < SurfaceLayout.SURFACE_ORIGINAL) {
             mCurrentSize++;
         } else {
             mCurrentSize = 0;
         }
         changeSurfaceLayout();
         switch (mCurrentSize) {
-            case SURFACE_BEST_FIT:
+            case SurfaceLayout.SURFACE_BEST_FIT:
                 showInfo(R.string.surface_best_fit, 1000);
                 break;
-            case SURFACE_FIT_HORIZONTAL:
+            case SurfaceLayout.SURFACE_FIT_HORIZONTAL:
                 showInfo(R.string.surface_fit_horizontal, 1000);
                 break;
-            case SURFACE_FIT_VERTICAL:
+            case SurfaceLayout.SURFACE_FIT_VERTICAL:
                 showInfo(R.string.surface_fit_vertical, 1000);
                 break;
-            case SURFACE_FILL:
+            case SurfaceLayout.SURFACE_FILL:
                 showInfo(R.string.surface_fill, 1000);
                 break;
-            case SURFACE_16_9:
+            case SurfaceLayout.SURFACE_16_9:
                 showInfo("16:9", 1000);
                 break;
-            case SURFACE_4_3:
+            case SurfaceLayout.SURFACE_4_3:
                 showInfo("4:3", 1000);
                 break;
-            case SURFACE_ORIGINAL:
+            case SurfaceLayout.SURFACE_ORIGINAL:
                 showInfo(R.string.surface_original, 1000);
                 break;
         }
@@ -2238,7 +2316,8 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
             mShowing = true;
             return;
         }
-        mHandler.sendEmptyMessage(SHOW_PROGRESS);
+        syncProgressTicker();
+        mProgressTicker.start();
         if (!mShowing) {
             mShowing = true;
             if (!mIsLocked) {
@@ -2267,7 +2346,7 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
     private void hideOverlay(boolean fromUser) {
         if (mShowing) {
             mHandler.removeMessages(FADE_OUT);
-            mHandler.removeMessages(SHOW_PROGRESS);
+            mProgressTicker.stop();
             Log.i(TAG, "remove View!");
             if (mOverlayTips != null) mOverlayTips.setVisibility(View.INVISIBLE);
             if (!fromUser && !mIsLocked) {
@@ -2347,20 +2426,24 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
      * update the overlay
      */
     private int setOverlayProgress() {
+        return setOverlayProgress(true);
+    }
+
+    /**
+     * @param updateText false to only move the seekbar
+     */
+    private int setOverlayProgress(boolean updateText) {
         if (mService == null) {
             return 0;
         }
         int time = (int) getTime();
-        int length = (int) mService.getLength();
-        if (length == 0) {
-            MediaWrapper media = MediaDatabase.getInstance().getMedia(mUri);
-            if (media != null)
-                length = (int) media.getLength();
-        }
+        int length = (int) mProgressTicker.getLength();
 
         // Update all view elements
         mSeekbar.setMax(length);
         mSeekbar.setProgress(time);
+        if (!updateText)
+            return time;
         if (mSysTime != null)
             mSysTime.setText(DateFormat.getTimeFormat(this).format(new Date(System.currentTimeMillis())));
         if (time >= 0) mTime.setText(Strings.millisToString(time));
@@ -2603,24 +2686,24 @@ public class VideoPlayerActivity extends AppCompatActivity implements IVLCVout.C
 
         if (mUri != null) {
             // restore last position
-            MediaWrapper media = MediaDatabase.getInstance().getMedia(mUri);
-            if(media != null) {
+            final MediaDatabase.ResumeState state = MediaDatabase.getInstance().getResumeState(mUri);
+            if(state != null) {
                 // in media library
-                if(media.getTime() > 0 && !fromStart && openedPosition == -1) {
+                if(state.time > 0 && !fromStart && openedPosition == -1) {
                     if (mAskResume) {
                         showConfirmResumeDialog();
                         return;
                     } else {
-                        intentPosition = media.getTime();
-                        mediaLength = media.getLength();
+                        intentPosition = state.time;
+                        mediaLength = state.length;
                     }
                 }
                 // Consume fromStart option after first use to prevent
                 // restarting again when playback is paused.
                 intent.putExtra(PLAY_EXTRA_FROM_START, false);
 
-                mLastAudioTrack = media.getAudioTrack();
-                mLastSpuTrack = media.getSpuTrack();
+                mLastAudioTrack = state.audioTrack;
+                mLastSpuTrack = state.spuTrack;
             } else if (openedPosition == -1) {
                 // not in media library
 
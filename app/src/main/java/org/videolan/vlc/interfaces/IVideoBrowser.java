@@ -31,4 +31,5 @@ public interface IVideoBrowser extends IBrowser {
     public void await() throws InterruptedException, BrokenBarrierException;
     public void updateItem();
     public void updateList();
+    public void updateTimes();
 }
@@ -0,0 +1,145 @@
+/*****************************************************************************
+ * LogRingBuffer.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Fixed capacity buffer of text lines, stored as UTF-8 bytes separated by '\n'.
+ * The oldest lines are dropped to make room for the new ones.
+ *
+ * Not thread safe, callers have to synchronize the accesses.
+ */
+public class LogRingBuffer {
+    public final static String TAG = "VLC/Util/LogRingBuffer";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final byte[] mBuffer;
+    /* offset of the oldest line */
+    private int mStart = 0;
+    /* number of bytes used, from mStart */
+    private int mSize = 0;
+    private int mLineCount = 0;
+
+    public LogRingBuffer(int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("capacity should be at least 2");
+        mBuffer = new byte[capacity];
+    }
+
+    /**
+     * Append a line, dropping the oldest ones if needed. Lines longer than the capacity are
+     * truncated.
+     */
+    public void append(String line) {
+        final ByteBuffer bytes = UTF8.encode(line);
+        final int length = Math.min(bytes.remaining(), mBuffer.length - 1);
+        while (mBuffer.length - mSize < length + 1)
+            dropOldest();
+
+        final int end = (mStart + mSize) % mBuffer.length;
+        final int first = Math.min(length, mBuffer.length - end);
+        bytes.get(mBuffer, end, first);
+        bytes.get(mBuffer, 0, length - first);
+        mBuffer[(end + length) % mBuffer.length] = '\n';
+        mSize += length + 1;
+        ++mLineCount;
+    }
+
+    public void clear() {
+        mStart = 0;
+        mSize = 0;
+        mLineCount = 0;
+    }
+
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    /**
+     * @param count maximum number of lines to return
+     * @param skip number of most recent lines to leave out
+     * @return the most recent lines, oldest first
+     */
+    public ArrayList<String> getLastLines(int count, int skip) {
+        final ArrayList<String> lines = new ArrayList<String>(Math.max(0, Math.min(count, mLineCount - skip)));
+        /* positions relative to mStart */
+        int lineEnd = mSize - 1;
+        int skipped = 0;
+        while (lineEnd >= 0 && lines.size() < count) {
+            int lineStart = lineEnd;
+            while (lineStart > 0 && byteAt(lineStart - 1) != '\n')
+                --lineStart;
+            if (skipped < skip)
+                ++skipped;
+            else
+                lines.add(decode(lineStart, lineEnd - lineStart));
+            lineEnd = lineStart - 1;
+        }
+        Collections.reverse(lines);
+        return lines;
+    }
+
+    /**
+     * Write all the lines to a channel, without copying them.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        final int first = Math.min(mSize, mBuffer.length - mStart);
+        write(channel, ByteBuffer.wrap(mBuffer, mStart, first));
+        if (mSize > first)
+            write(channel, ByteBuffer.wrap(mBuffer, 0, mSize - first));
+    }
+
+    private static void write(WritableByteChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+    }
+
+    private void dropOldest() {
+        int length = 0;
+        while (byteAt(length) != '\n')
+            ++length;
+        mStart = (mStart + length + 1) % mBuffer.length;
+        mSize -= length + 1;
+        --mLineCount;
+    }
+
+    private byte byteAt(int position) {
+        return mBuffer[(mStart + position) % mBuffer.length];
+    }
+
+    private String decode(int position, int length) {
+        final int offset = (mStart + position) % mBuffer.length;
+        if (offset + length <= mBuffer.length)
+            return UTF8.decode(ByteBuffer.wrap(mBuffer, offset, length)).toString();
+        final byte[] bytes = new byte[length];
+        final int first = mBuffer.length - offset;
+        System.arraycopy(mBuffer, offset, bytes, 0, first);
+        System.arraycopy(mBuffer, 0, bytes, first, length - first);
+        return UTF8.decode(ByteBuffer.wrap(bytes)).toString();
+    }
+}
@@ -0,0 +1,264 @@
+/*****************************************************************************
+ * Trace.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.util;
+
+import org.json.JSONObject;
+import org.videolan.vlc.BuildConfig;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-process performance trace recorder.
+ *
+ * Each thread records its last EVENTS_PER_THREAD timed sections in its own fixed size buffer,
+ * with nanosecond timestamps, and keeps a duration histogram per section. Recording only
+ * allocates the first time a thread records a section, and does not contend between threads.
+ *
+ * Usage:
+ * <pre>
+ *     final long start = Trace.begin();
+ *     ...
+ *     Trace.end("Section.name", start);
+ * </pre>
+ * Section names should be constants. Nothing is recorded in release builds.
+ */
+public class Trace {
+    public final static String TAG = "VLC/Util/Trace";
+
+    private static final boolean ENABLED = BuildConfig.DEBUG;
+    private static final int EVENTS_PER_THREAD = 1024;
+    /* Above this count, the buffer of a finished thread, or else the oldest one, is dropped.
+     * Its histograms are kept. */
+    private static final int MAX_THREADS = 32;
+    /* Bucket i counts the durations in [2^i, 2^(i+1)) µs */
+    private static final int BUCKETS = 32;
+    private static final int HISTOGRAM_TOTAL = BUCKETS;
+    private static final int HISTOGRAM_MAX = BUCKETS + 1;
+    private static final int HISTOGRAM_SIZE = BUCKETS + 2;
+
+    private static class ThreadBuffer {
+        final Thread thread;
+        final String[] sections = new String[EVENTS_PER_THREAD];
+        final long[] starts = new long[EVENTS_PER_THREAD];
+        final long[] durations = new long[EVENTS_PER_THREAD];
+        int next = 0;
+        int count = 0;
+        final HashMap<String, long[]> histograms = new HashMap<String, long[]>();
+
+        ThreadBuffer(Thread thread) {
+            this.thread = thread;
+        }
+
+        synchronized void add(String section, long start, long duration) {
+            sections[next] = section;
+            starts[next] = start;
+            durations[next] = duration;
+            next = (next + 1) % EVENTS_PER_THREAD;
+            if (count < EVENTS_PER_THREAD)
+                ++count;
+            long[] histogram = histograms.get(section);
+            if (histogram == null) {
+                histogram = new long[HISTOGRAM_SIZE];
+                histograms.put(section, histogram);
+            }
+            addToHistogram(histogram, duration);
+        }
+    }
+
+    /* Guarded by sBuffers */
+    private static final ArrayList<ThreadBuffer> sBuffers = new ArrayList<ThreadBuffer>();
+    private static final HashMap<String, long[]> sRetiredHistograms = new HashMap<String, long[]>();
+
+    private static final ThreadLocal<ThreadBuffer> sBuffer = new ThreadLocal<ThreadBuffer>() {
+        @Override
+        protected ThreadBuffer initialValue() {
+            final ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread());
+            synchronized (sBuffers) {
+                if (sBuffers.size() >= MAX_THREADS)
+                    retireBuffer();
+                sBuffers.add(buffer);
+            }
+            return buffer;
+        }
+    };
+
+    /**
+     * @return the start time of a section, to give to {@link #end(String, long)}
+     */
+    public static long begin() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record a section of the current thread, from start to now.
+     */
+    public static void end(String section, long start) {
+        if (ENABLED)
+            sBuffer.get().add(section, start, System.nanoTime() - start);
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static void clear() {
+        synchronized (sBuffers) {
+            for (ThreadBuffer buffer : sBuffers) {
+                synchronized (buffer) {
+                    buffer.next = 0;
+                    buffer.count = 0;
+                    buffer.histograms.clear();
+                }
+            }
+            sRetiredHistograms.clear();
+        }
+    }
+
+    /**
+     * @return one line per section, with its count and duration statistics, sorted by name
+     */
+    public static ArrayList<String> getReport() {
+        final TreeMap<String, long[]> histograms = new TreeMap<String, long[]>();
+        synchronized (sBuffers) {
+            mergeHistograms(histograms, sRetiredHistograms);
+            for (ThreadBuffer buffer : sBuffers) {
+                synchronized (buffer) {
+                    mergeHistograms(histograms, buffer.histograms);
+                }
+            }
+        }
+        final ArrayList<String> report = new ArrayList<String>(histograms.size());
+        for (Map.Entry<String, long[]> entry : histograms.entrySet()) {
+            final long[] histogram = entry.getValue();
+            final long count = getCount(histogram);
+            report.add(String.format(Locale.US, "%s: %d calls, %.2f ms avg, p50 < %.2f ms, p90 < %.2f ms, p99 < %.2f ms, %.2f ms max",
+                    entry.getKey(), count, histogram[HISTOGRAM_TOTAL] / 1e6 / count,
+                    getPercentile(histogram, count, 50), getPercentile(histogram, count, 90),
+                    getPercentile(histogram, count, 99), histogram[HISTOGRAM_MAX] / 1e6));
+        }
+        return report;
+    }
+
+    /**
+     * Write the recorded events to a file in the Chrome trace event format, which can be
+     * opened in chrome://tracing or Perfetto.
+     */
+    public static void export(String filename) throws IOException {
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "UTF-8"));
+            writer.write("{\"traceEvents\":[\n");
+            boolean first = true;
+            synchronized (sBuffers) {
+                for (ThreadBuffer buffer : sBuffers) {
+                    synchronized (buffer) {
+                        final long tid = buffer.thread.getId();
+                        if (!first)
+                            writer.write(",\n");
+                        first = false;
+                        writer.write(String.format(Locale.US,
+                                "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":0,\"tid\":%d,\"args\":{\"name\":%s}}",
+                                tid, JSONObject.quote(buffer.thread.getName())));
+                        for (int i = 0; i < buffer.count; ++i) {
+                            final int index = (buffer.next - buffer.count + i + EVENTS_PER_THREAD) % EVENTS_PER_THREAD;
+                            writer.write(String.format(Locale.US,
+                                    ",\n{\"name\":%s,\"ph\":\"X\",\"pid\":0,\"tid\":%d,\"ts\":%.3f,\"dur\":%.3f}",
+                                    JSONObject.quote(buffer.sections[index]), tid,
+                                    buffer.starts[index] / 1e3, buffer.durations[index] / 1e3));
+                        }
+                    }
+                }
+            }
+            writer.write("\n]}\n");
+        } finally {
+            Util.close(writer);
+        }
+    }
+
+    /* Called with sBuffers locked */
+    private static void retireBuffer() {
+        int index = 0;
+        for (int i = 0; i < sBuffers.size(); ++i) {
+            if (!sBuffers.get(i).thread.isAlive()) {
+                index = i;
+                break;
+            }
+        }
+        final ThreadBuffer buffer = sBuffers.remove(index);
+        synchronized (buffer) {
+            mergeHistograms(sRetiredHistograms, buffer.histograms);
+        }
+    }
+
+    private static void mergeHistograms(Map<String, long[]> dest, Map<String, long[]> src) {
+        for (Map.Entry<String, long[]> entry : src.entrySet()) {
+            long[] histogram = dest.get(entry.getKey());
+            if (histogram == null) {
+                histogram = new long[HISTOGRAM_SIZE];
+                dest.put(entry.getKey(), histogram);
+            }
+            final long[] other = entry.getValue();
+            for (int i = 0; i < BUCKETS; ++i)
+                histogram[i] += other[i];
+            histogram[HISTOGRAM_TOTAL] += other[HISTOGRAM_TOTAL];
+            histogram[HISTOGRAM_MAX] = Math.max(histogram[HISTOGRAM_MAX], other[HISTOGRAM_MAX]);
+        }
+    }
+
+    private static void addToHistogram(long[] histogram, long duration) {
+        final long us = duration / 1000;
+        final int bucket = us <= 0 ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(us));
+        ++histogram[bucket];
+        histogram[HISTOGRAM_TOTAL] += duration;
+        if (duration > histogram[HISTOGRAM_MAX])
+            histogram[HISTOGRAM_MAX] = duration;
+    }
+
+    private static long getCount(long[] histogram) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; ++i)
+            count += histogram[i];
+        return count;
+    }
+
+    /**
+     * @return the upper bound, in ms, of the bucket containing the percentile
+     */
+    private static double getPercentile(long[] histogram, long count, int percentile) {
+        final long rank = (count * percentile + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += histogram[i];
+            if (seen >= rank)
+                return (1L << (i + 1)) / 1e3;
+        }
+        return histogram[HISTOGRAM_MAX] / 1e6;
+    }
+}
@@ -0,0 +1,185 @@
+/*****************************************************************************
+ * MediaPlayerEventTest.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class MediaPlayerEventTest {
+
+    /* Events of a burst sent before the main thread runs, within the pool sizes */
+    private static final int BURST = 4;
+
+    private VLCObjectTest.EventLoop mLoop;
+    private MediaPlayer mPlayer;
+    private final Set<Runnable> mRunnables = Collections.newSetFromMap(new IdentityHashMap<Runnable, Boolean>());
+    private final Set<MediaPlayer.Event> mEvents = Collections.newSetFromMap(new IdentityHashMap<MediaPlayer.Event, Boolean>());
+    private final ArrayList<String> mReceived = new ArrayList<String>();
+    /* Pooled events are recycled once per delivery, after the listener returned */
+    private int mListenerReturns = 0;
+    private int mRecycled = 0;
+    private int mRecycledEarly = 0;
+
+    private final MediaPlayer.EventListener mListener = new MediaPlayer.EventListener() {
+        @Override
+        public void onEvent(MediaPlayer.Event event) {
+            mEvents.add(event);
+            switch (event.type) {
+                case MediaPlayer.Event.TimeChanged:
+                    mReceived.add("time " + event.getTimeChanged());
+                    break;
+                case MediaPlayer.Event.PositionChanged:
+                    mReceived.add("position " + event.getPositionChanged());
+                    break;
+            }
+            ++mListenerReturns;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mLoop = new VLCObjectTest.EventLoop();
+        mPlayer = new MediaPlayer() {
+            @Override
+            void postEvent(Runnable runnable) {
+                mRunnables.add(runnable);
+                mLoop.posted.add(runnable);
+            }
+
+            @Override
+            protected synchronized void onEventRecycled(Event event) {
+                if (mRecycled++ >= mListenerReturns)
+                    ++mRecycledEarly;
+                super.onEventRecycled(event);
+            }
+        };
+        mPlayer.setEventListener(mListener);
+    }
+
+    /* Sends BURST TimeChanged and PositionChanged events, then lets the main thread run */
+    private void sendBurst(int frame) {
+        for (int i = 0; i < BURST; ++i) {
+            mLoop.sendEvent(mPlayer, MediaPlayer.Event.TimeChanged, frame * BURST + i, 0);
+            mLoop.sendEvent(mPlayer, MediaPlayer.Event.PositionChanged, 0, i / 8f);
+        }
+        mLoop.run();
+    }
+
+    @Test
+    public void eventsAndRunnablesAreReusedAfterWarmUp() {
+        sendBurst(0);
+        final int events = mEvents.size();
+        final int runnables = mRunnables.size();
+        assertEquals(2 * BURST, events);
+        assertEquals(2 * BURST, runnables);
+
+        for (int frame = 1; frame < 100; ++frame)
+            sendBurst(frame);
+        assertEquals("new events after warm-up", events, mEvents.size());
+        assertEquals("new runnables after warm-up", runnables, mRunnables.size());
+    }
+
+    @Test
+    public void reusedEventsCarryTheirOwnValues() {
+        for (int frame = 0; frame < 3; ++frame)
+            sendBurst(frame);
+        assertEquals(3 * 2 * BURST, mReceived.size());
+        int i = 0;
+        for (int frame = 0; frame < 3; ++frame) {
+            for (int j = 0; j < BURST; ++j) {
+                assertEquals("time " + (frame * BURST + j), mReceived.get(i++));
+                assertEquals("position " + (j / 8f), mReceived.get(i++));
+            }
+        }
+    }
+
+    @Test
+    public void burstLargerThanThePoolsIsDelivered() {
+        for (int i = 0; i < 50; ++i)
+            mLoop.sendEvent(mPlayer, MediaPlayer.Event.TimeChanged, i, 0);
+        mLoop.run();
+        assertEquals(50, mReceived.size());
+        for (int i = 0; i < 50; ++i)
+            assertEquals("time " + i, mReceived.get(i));
+    }
+
+    @Test
+    public void eventsAreRecycledOnceTheListenerReturns() {
+        for (int frame = 0; frame < 10; ++frame)
+            sendBurst(frame);
+        assertEquals(10 * 2 * BURST, mRecycled);
+        assertEquals(0, mRecycledEarly);
+    }
+
+    @Test
+    public void eventInUseIsNotHandedOutAgain() {
+        final ArrayList<MediaPlayer.Event> nested = new ArrayList<MediaPlayer.Event>();
+        mPlayer.setEventListener(new MediaPlayer.EventListener() {
+            @Override
+            public void onEvent(MediaPlayer.Event event) {
+                final long time = event.getTimeChanged();
+                if (time < 20) {
+                    /* libvlc sends the next event while the main thread handles this one */
+                    mLoop.sendEvent(mPlayer, MediaPlayer.Event.TimeChanged, time + 1, 0);
+                    final MediaPlayer.Event next = (MediaPlayer.Event) lastPostedEvent();
+                    assertNotSame(event, next);
+                    assertEquals(time, event.getTimeChanged());
+                    nested.add(next);
+                }
+            }
+        });
+        mLoop.sendEvent(mPlayer, MediaPlayer.Event.TimeChanged, 0, 0);
+        mLoop.run();
+        assertEquals(20, nested.size());
+        assertTrue(mLoop.posted.isEmpty());
+    }
+
+    /* The event held by the last posted runnable */
+    private Object lastPostedEvent() {
+        final Runnable runnable = mLoop.posted.getLast();
+        try {
+            final Field field = runnable.getClass().getDeclaredField("event");
+            field.setAccessible(true);
+            return field.get(runnable);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void otherEventsAreNotPooled() {
+        mLoop.sendEvent(mPlayer, MediaPlayer.Event.Playing, 0, 0);
+        mLoop.run();
+        mLoop.sendEvent(mPlayer, MediaPlayer.Event.Playing, 0, 0);
+        mLoop.run();
+        assertEquals(2, mEvents.size());
+    }
+}
@@ -0,0 +1,169 @@
+/*****************************************************************************
+ * VLCObjectTest.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.libvlc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VLCObjectTest {
+
+    /**
+     * Sends the events the way libvlc does, from the JNI entry point, and queues the posted
+     * runnables instead of the main looper.
+     */
+    static class EventLoop {
+        private static final Method DISPATCH;
+        static {
+            try {
+                DISPATCH = VLCObject.class.getDeclaredMethod("dispatchEventFromNative",
+                        int.class, long.class, float.class);
+                DISPATCH.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        final LinkedList<Runnable> posted = new LinkedList<Runnable>();
+
+        void sendEvent(VLCObject<?> object, int eventType, long arg1, float arg2) {
+            try {
+                DISPATCH.invoke(object, eventType, arg1, arg2);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        /* Run the posted runnables, like the main looper */
+        void run() {
+            while (!posted.isEmpty())
+                posted.removeFirst().run();
+        }
+    }
+
+    private static class FakeEvent extends VLCEvent {
+        final long arg1;
+
+        FakeEvent(int type, long arg1) {
+            super(type);
+            this.arg1 = arg1;
+        }
+    }
+
+    private static final int IGNORED = 0;
+
+    private class FakeObject extends VLCObject<FakeEvent> {
+        final ArrayList<Long> recycled = new ArrayList<Long>();
+
+        @Override
+        protected FakeEvent onEventNative(int eventType, long arg1, float arg2) {
+            return eventType != IGNORED ? new FakeEvent(eventType, arg1) : null;
+        }
+
+        @Override
+        protected void onEventRecycled(FakeEvent event) {
+            recycled.add(event.arg1);
+        }
+
+        @Override
+        protected void onReleaseNative() {
+        }
+
+        @Override
+        void postEvent(Runnable runnable) {
+            mLoop.posted.add(runnable);
+        }
+    }
+
+    private class EventRecorder implements VLCEvent.Listener<FakeEvent> {
+        final ArrayList<Long> events = new ArrayList<Long>();
+
+        @Override
+        public void onEvent(FakeEvent event) {
+            events.add(event.arg1);
+        }
+    }
+
+    private EventLoop mLoop;
+    private FakeObject mObject;
+
+    @Before
+    public void setUp() {
+        mLoop = new EventLoop();
+        mObject = new FakeObject();
+    }
+
+    @Test
+    public void eventsAreDispatchedInOrderOnTheMainThread() {
+        final EventRecorder recorder = new EventRecorder();
+        mObject.setEventListener(recorder);
+        for (long i = 0; i < 3; ++i)
+            mLoop.sendEvent(mObject, 1, i, 0);
+        assertTrue(recorder.events.isEmpty());
+        assertTrue(mObject.recycled.isEmpty());
+
+        mLoop.run();
+        assertEquals(Arrays.asList(0L, 1L, 2L), recorder.events);
+        assertEquals(Arrays.asList(0L, 1L, 2L), mObject.recycled);
+    }
+
+    @Test
+    public void eventsWithoutListenerAreRecycled() {
+        mLoop.sendEvent(mObject, 1, 42, 0);
+        assertTrue(mLoop.posted.isEmpty());
+        assertEquals(Arrays.asList(42L), mObject.recycled);
+
+        mObject.setEventListener(new EventRecorder());
+        mObject.setEventListener(null);
+        mLoop.sendEvent(mObject, 1, 43, 0);
+        assertTrue(mLoop.posted.isEmpty());
+        assertEquals(Arrays.asList(42L, 43L), mObject.recycled);
+    }
+
+    @Test
+    public void ignoredEventsAreNotPosted() {
+        mObject.setEventListener(new EventRecorder());
+        mLoop.sendEvent(mObject, IGNORED, 0, 0);
+        assertTrue(mLoop.posted.isEmpty());
+        assertTrue(mObject.recycled.isEmpty());
+    }
+
+    @Test
+    public void listenerCanBeReplaced() {
+        final EventRecorder first = new EventRecorder();
+        final EventRecorder second = new EventRecorder();
+        mObject.setEventListener(first);
+        mLoop.sendEvent(mObject, 1, 0, 0);
+        mLoop.run();
+        mObject.setEventListener(second);
+        mLoop.sendEvent(mObject, 1, 1, 0);
+        mLoop.run();
+        assertEquals(Arrays.asList(0L), first.events);
+        assertEquals(Arrays.asList(1L), second.events);
+    }
+}
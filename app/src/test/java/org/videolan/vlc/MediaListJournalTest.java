@@ -0,0 +1,156 @@
+/*****************************************************************************
+ * MediaListJournalTest.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.videolan.vlc.MediaWrapperListTest.media;
+import static org.videolan.vlc.MediaWrapperListTest.medias;
+
+public class MediaListJournalTest {
+
+    private File mFile;
+    private MediaWrapperList mList;
+    private MediaListJournal mJournal;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("queue", ".journal");
+        mFile.delete();
+        mList = new MediaWrapperList();
+        mJournal = new MediaListJournal(mFile, mList);
+    }
+
+    @After
+    public void tearDown() {
+        mJournal.close();
+        mFile.delete();
+    }
+
+    private static void append(File file, byte... bytes) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void noJournal() {
+        assertNull(mJournal.read());
+    }
+
+    @Test
+    public void replay() {
+        mList.addAll(medias("a", "b", "c"));
+        mList.insert(1, media("d"));
+        mList.move(0, 4);
+        mList.remove(2);
+        mList.addAll(medias("e", "b"));
+        mList.remove("b");
+        mList.move(2, 0);
+        assertEquals(mList.getMRLs(), mJournal.read());
+
+        /* writes go on after a read */
+        mList.insert(0, media("f"));
+        assertEquals(mList.getMRLs(), mJournal.read());
+    }
+
+    @Test
+    public void previousQueueIsKeptUntilTheFirstChange() {
+        mList.addAll(medias("a", "b"));
+        assertEquals(Arrays.asList("a", "b"), mJournal.read());
+
+        final MediaWrapperList list = new MediaWrapperList();
+        final MediaListJournal journal = new MediaListJournal(mFile, list);
+        try {
+            assertEquals(Arrays.asList("a", "b"), journal.read());
+            list.addAll(medias("c"));
+            assertEquals(Collections.singletonList("c"), journal.read());
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void reloadIsWrittenAsASnapshot() {
+        mList.addAll(medias("a", "b"));
+        mList.insert(2, media("c"));
+        mList.clear();
+        mList.addAll(medias("d", "e"));
+        assertEquals(Arrays.asList("d", "e"), mJournal.read());
+    }
+
+    @Test
+    public void journalIsCompacted() {
+        mList.addAll(medias("a"));
+        for (int i = 0; i < 300; ++i) {
+            mList.insert(1, media("b"));
+            mList.remove(1);
+        }
+        assertEquals(Collections.singletonList("a"), mJournal.read());
+        /* 600 records of 9 or 14 bytes without compaction */
+        assertTrue(mFile.length() < 256 * 14);
+    }
+
+    @Test
+    public void truncatedRecordIsDropped() throws IOException {
+        mList.addAll(medias("a", "b"));
+        assertEquals(Arrays.asList("a", "b"), mJournal.read());
+        /* OP_MOVE with a partial first index */
+        append(mFile, (byte) 3, (byte) 0, (byte) 0);
+        assertEquals(Arrays.asList("a", "b"), mJournal.read());
+    }
+
+    @Test
+    public void corruptedJournal() throws IOException {
+        mList.addAll(medias("a", "b"));
+        assertEquals(Arrays.asList("a", "b"), mJournal.read());
+        /* OP_REMOVE of an index past the end */
+        append(mFile, (byte) 2, (byte) 0, (byte) 0, (byte) 0, (byte) 1, (byte) 0, (byte) 0, (byte) 0, (byte) 2);
+        assertNull(mJournal.read());
+    }
+
+    @Test
+    public void unknownFile() throws IOException {
+        append(mFile, (byte) 'n', (byte) 'o', (byte) 'p', (byte) 'e', (byte) 0, (byte) 0, (byte) 0, (byte) 1);
+        assertNull(mJournal.read());
+    }
+
+    @Test
+    public void closedJournal() {
+        mList.addAll(medias("a"));
+        mJournal.close();
+        assertNull(mJournal.read());
+    }
+}
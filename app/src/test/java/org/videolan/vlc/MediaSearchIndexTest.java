@@ -0,0 +1,185 @@
+/*****************************************************************************
+ * MediaSearchIndexTest.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MediaSearchIndexTest {
+
+    /* Built without Uri, which is not available on the JVM */
+    private static MediaWrapper media(final String location, String title, String artist, String album, String genre) {
+        return new MediaWrapper(null, 0, 0, MediaWrapper.TYPE_AUDIO, null, title, artist, genre, album, null,
+                0, 0, null, -1, -1, 0, 0, 0) {
+            @Override
+            public String getLocation() {
+                return location;
+            }
+        };
+    }
+
+    private static MediaWrapper media(String title) {
+        return media("file:///" + title, title, null, null, null);
+    }
+
+    private MediaSearchIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new MediaSearchIndex();
+    }
+
+    private void assertResults(List<MediaWrapper> results, String... titles) {
+        final ArrayList<String> resultTitles = new ArrayList<String>(results.size());
+        for (MediaWrapper media : results)
+            resultTitles.add(media.getTitle());
+        assertEquals(Arrays.asList(titles), resultTitles);
+    }
+
+    private void assertSearch(String query, String... titles) {
+        assertResults(mIndex.search(query, Integer.MAX_VALUE), titles);
+    }
+
+    @Test
+    public void prefixMatching() {
+        mIndex.add(media("The Dark Knight"));
+        mIndex.add(media("Darkness Falls"));
+        mIndex.add(media("Dark City"));
+        mIndex.add(media("Knight Rider"));
+
+        /* title prefix first, then title word, sorted by title */
+        assertSearch("dark", "Dark City", "Darkness Falls", "The Dark Knight");
+        assertSearch("DARKN", "Darkness Falls");
+        assertSearch("k", "Knight Rider", "The Dark Knight");
+        assertSearch("ark");
+        assertSearch("unknown");
+    }
+
+    @Test
+    public void allQueryWordsMustMatch() {
+        mIndex.add(media("The Dark Knight"));
+        mIndex.add(media("Knight Rider"));
+        mIndex.add(media("Dark City"));
+
+        assertSearch("kni da", "The Dark Knight");
+        assertSearch("dark, knight!", "The Dark Knight");
+        assertSearch("knight city");
+    }
+
+    @Test
+    public void emptyQuery() {
+        mIndex.add(media("Dark City"));
+        assertSearch("");
+        assertSearch(" - ");
+        assertSearch(null);
+    }
+
+    @Test
+    public void otherFieldsRankLast() {
+        mIndex.add(media("file:///song", "Song", "Dark Star", null, null));
+        mIndex.add(media("file:///album", "Track", null, "Dark Side", null));
+        mIndex.add(media("file:///genre", "Piece", null, null, "darkwave"));
+        mIndex.add(media("Dark City"));
+
+        assertSearch("dark", "Dark City", "Piece", "Song", "Track");
+        assertSearch("song dark", "Song");
+    }
+
+    @Test
+    public void accentFolding() {
+        assertEquals("elodie a ca", MediaSearchIndex.foldAccents("élodie à ça"));
+        assertEquals("plain text", MediaSearchIndex.foldAccents("plain text"));
+        assertEquals("noel", MediaSearchIndex.foldAccents("noël"));
+        assertNull(MediaSearchIndex.normalize(null));
+    }
+
+    @Test
+    public void accentedTitles() {
+        mIndex.add(media("Été indien"));
+        mIndex.add(media("Ça"));
+
+        assertSearch("été", "Été indien");
+        assertSearch("ÉTÉ IND", "Été indien");
+        assertSearch("ça", "Ça");
+    }
+
+    @Test
+    public void removeAndAddAgain() {
+        final MediaWrapper knight = media("The Dark Knight");
+        mIndex.add(knight);
+        mIndex.add(media("Dark City"));
+        assertEquals(2, mIndex.size());
+
+        mIndex.remove(knight.getLocation());
+        mIndex.remove("file:///unknown");
+        assertEquals(1, mIndex.size());
+        assertSearch("knight");
+        assertSearch("dark", "Dark City");
+
+        /* the freed id is reused without the words of the removed media */
+        mIndex.add(media("Knight Rider"));
+        assertSearch("knight", "Knight Rider");
+        assertSearch("dark", "Dark City");
+
+        mIndex.add(knight);
+        assertEquals(3, mIndex.size());
+        assertSearch("knight", "Knight Rider", "The Dark Knight");
+    }
+
+    @Test
+    public void addingALocationAgainReplacesIt() {
+        mIndex.add(media("file:///movie", "Old Title", null, null, null));
+        mIndex.add(media("file:///movie", "New Title", null, null, null));
+        assertEquals(1, mIndex.size());
+        assertSearch("old");
+        assertSearch("title", "New Title");
+    }
+
+    @Test
+    public void limit() {
+        for (int i = 9; i >= 0; --i)
+            mIndex.add(media("Track " + i));
+
+        assertResults(mIndex.search("track", 3), "Track 0", "Track 1", "Track 2");
+        assertEquals(10, mIndex.search("track", 10).size());
+        assertEquals(10, mIndex.search("track", 20).size());
+        assertTrue(mIndex.search("track", 0).isEmpty());
+    }
+
+    @Test
+    public void clear() {
+        mIndex.add(media("Dark City"));
+        mIndex.clear();
+        assertEquals(0, mIndex.size());
+        assertSearch("dark");
+
+        mIndex.add(media("Dark City"));
+        assertSearch("dark", "Dark City");
+    }
+}
@@ -0,0 +1,247 @@
+/*****************************************************************************
+ * MediaWrapperListTest.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MediaWrapperListTest {
+
+    /* Built without Uri, which is not available on the JVM */
+    static MediaWrapper media(final String location) {
+        return new MediaWrapper(null, 0, 0, MediaWrapper.TYPE_VIDEO, null, location, null, null, null, null,
+                0, 0, null, -1, -1, 0, 0, 0) {
+            @Override
+            public String getLocation() {
+                return location;
+            }
+        };
+    }
+
+    static List<MediaWrapper> medias(String... locations) {
+        final ArrayList<MediaWrapper> medias = new ArrayList<MediaWrapper>(locations.length);
+        for (String location : locations)
+            medias.add(media(location));
+        return medias;
+    }
+
+    private static class EventRecorder implements MediaWrapperList.EventListener {
+        final ArrayList<String> events = new ArrayList<String>();
+
+        @Override
+        public void onItemAdded(int index, String mrl) {
+            events.add("added " + index + " " + mrl);
+        }
+
+        @Override
+        public void onItemRemoved(int index, String mrl) {
+            events.add("removed " + index + " " + mrl);
+        }
+
+        @Override
+        public void onItemMoved(int indexBefore, int indexAfter, String mrl) {
+            events.add("moved " + indexBefore + " " + indexAfter + " " + mrl);
+        }
+
+        @Override
+        public void onItemsAdded(int index, int count) {
+            events.add("added " + index + " x" + count);
+        }
+
+        @Override
+        public void onItemsRemoved(int[] indexes) {
+            events.add("removed " + Arrays.toString(indexes));
+        }
+    }
+
+    private MediaWrapperList mList;
+    private EventRecorder mRecorder;
+
+    @Before
+    public void setUp() {
+        mList = new MediaWrapperList();
+        mRecorder = new EventRecorder();
+        mList.addEventListener(mRecorder);
+    }
+
+    private void assertContent(String... locations) {
+        assertEquals(Arrays.asList(locations), mList.getMRLs());
+        for (int i = 0; i < locations.length; ++i)
+            assertEquals(locations[i], mList.getMRL(i));
+        /* the location index follows the list */
+        for (String location : locations) {
+            assertTrue(mList.contains(location));
+            assertEquals(Arrays.asList(locations).indexOf(location), mList.indexOf(location));
+        }
+    }
+
+    private void assertEvents(String... events) {
+        assertEquals(Arrays.asList(events), mRecorder.events);
+        mRecorder.events.clear();
+    }
+
+    @Test
+    public void addIsSilent() {
+        mList.add(media("a"));
+        mList.add(media("b"));
+        assertContent("a", "b");
+        assertEvents();
+    }
+
+    @Test
+    public void addAllSendsASingleEvent() {
+        mList.add(media("a"));
+        mList.addAll(medias("b", "c", "d"));
+        assertContent("a", "b", "c", "d");
+        assertEvents("added 1 x3");
+
+        mList.addAll(medias());
+        assertEvents();
+    }
+
+    @Test
+    public void insert() {
+        mList.addAll(medias("a", "c"));
+        mRecorder.events.clear();
+        mList.insert(1, media("b"));
+        mList.insert(0, media("c"));
+        mList.insert(4, media("d"));
+        assertContent("c", "a", "b", "c", "d");
+        assertEvents("added 1 b", "added 0 c", "added 4 d");
+    }
+
+    @Test
+    public void move() {
+        mList.addAll(medias("a", "b", "c", "d"));
+        mRecorder.events.clear();
+        /* the end position is counted before the removal */
+        mList.move(0, 3);
+        assertContent("b", "c", "a", "d");
+        mList.move(3, 0);
+        assertContent("d", "b", "c", "a");
+        mList.move(1, 4);
+        assertContent("d", "c", "a", "b");
+        assertEvents("moved 0 3 a", "moved 3 0 d", "moved 1 4 b");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void moveOutOfRange() {
+        mList.addAll(medias("a", "b"));
+        mList.move(0, 3);
+    }
+
+    @Test
+    public void removePosition() {
+        mList.addAll(medias("a", "b", "c"));
+        mRecorder.events.clear();
+        mList.remove(1);
+        mList.remove(5);
+        assertContent("a", "c");
+        assertFalse(mList.contains("b"));
+        assertEquals(-1, mList.indexOf("b"));
+        assertEvents("removed 1 b");
+    }
+
+    @Test
+    public void removeAllOccurrences() {
+        mList.addAll(medias("a", "b", "a", "c", "b"));
+        mRecorder.events.clear();
+        mList.remove("a");
+        assertContent("b", "c", "b");
+        assertEvents("removed [0, 2]");
+
+        mList.removeAll(Arrays.asList("b", "c", "unknown"));
+        assertContent();
+        assertFalse(mList.contains("b"));
+        assertEvents("removed [0, 1, 2]");
+
+        mList.remove("unknown");
+        assertEvents();
+    }
+
+    @Test
+    public void duplicatesAreIndexedInOrder() {
+        mList.addAll(medias("a", "b", "a"));
+        mList.insert(0, media("b"));
+        assertEquals(1, mList.indexOf("a"));
+        assertEquals(0, mList.indexOf("b"));
+        mList.remove(1);
+        assertEquals(2, mList.indexOf("a"));
+        mList.move(2, 0);
+        assertEquals(0, mList.indexOf("a"));
+    }
+
+    @Test
+    public void clear() {
+        mList.clear();
+        assertEvents();
+
+        mList.addAll(medias("a", "b", "c"));
+        mRecorder.events.clear();
+        mList.clear();
+        assertEquals(0, mList.size());
+        assertFalse(mList.contains("a"));
+        assertEvents("removed [0, 1, 2]");
+    }
+
+    @Test
+    public void replaceAllOccurrencesSilently() {
+        mList.addAll(medias("a", "b", "a"));
+        mRecorder.events.clear();
+        final MediaWrapper resolved = media("a");
+        mList.replace(resolved);
+        mList.replace(media("unknown"));
+        assertSame(resolved, mList.getMedia(0));
+        assertSame(resolved, mList.getMedia(2));
+        assertContent("a", "b", "a");
+        assertEvents();
+    }
+
+    @Test
+    public void listenersCanReadTheListFromTheirCallbacks() {
+        final ArrayList<String> seen = new ArrayList<String>();
+        mList.addEventListener(new EventRecorder() {
+            @Override
+            public void onItemsAdded(int index, int count) {
+                for (int i = 0; i < count; ++i)
+                    seen.add(mList.getMRL(index + i));
+            }
+        });
+        mList.addAll(medias("a", "b"));
+        assertEquals(Arrays.asList("a", "b"), seen);
+    }
+
+    @Test
+    public void removedListenerIsNotNotified() {
+        mList.removeEventListener(mRecorder);
+        mList.addAll(medias("a"));
+        assertEvents();
+    }
+}
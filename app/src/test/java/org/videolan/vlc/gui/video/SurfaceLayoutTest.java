@@ -0,0 +1,98 @@
+/*****************************************************************************
+ * SurfaceLayoutTest.java
+ *****************************************************************************
+ * Copyright © 2015 VLC authors and VideoLAN
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston MA 02110-1301, USA.
+ *****************************************************************************/
+
+package org.videolan.vlc.gui.video;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SurfaceLayoutTest {
+
+    /* 2:1 video on a 4:3 landscape display */
+    private static SurfaceLayout compute(int mode) {
+        return SurfaceLayout.compute(mode, 1200, 900, false, 800, 400, 800, 400, 1, 1);
+    }
+
+    @Test
+    public void bestFit() {
+        assertEquals(new SurfaceLayout(1200, 600, 1200, 600), compute(SurfaceLayout.SURFACE_BEST_FIT));
+    }
+
+    @Test
+    public void fitHorizontal() {
+        assertEquals(new SurfaceLayout(1200, 600, 1200, 600), compute(SurfaceLayout.SURFACE_FIT_HORIZONTAL));
+    }
+
+    @Test
+    public void fitVertical() {
+        assertEquals(new SurfaceLayout(1800, 900, 1800, 900), compute(SurfaceLayout.SURFACE_FIT_VERTICAL));
+    }
+
+    @Test
+    public void fill() {
+        assertEquals(new SurfaceLayout(1200, 900, 1200, 900), compute(SurfaceLayout.SURFACE_FILL));
+    }
+
+    @Test
+    public void forced16_9() {
+        assertEquals(new SurfaceLayout(1200, 675, 1200, 675), compute(SurfaceLayout.SURFACE_16_9));
+    }
+
+    @Test
+    public void forced4_3() {
+        assertEquals(new SurfaceLayout(1200, 900, 1200, 900), compute(SurfaceLayout.SURFACE_4_3));
+    }
+
+    @Test
+    public void original() {
+        assertEquals(new SurfaceLayout(800, 400, 800, 400), compute(SurfaceLayout.SURFACE_ORIGINAL));
+    }
+
+    @Test
+    public void portraitSwapsTheDisplaySize() {
+        final SurfaceLayout expected = new SurfaceLayout(900, 450, 900, 450);
+        assertEquals(expected, SurfaceLayout.compute(SurfaceLayout.SURFACE_BEST_FIT,
+                1200, 900, true, 800, 400, 800, 400, 1, 1));
+        assertEquals(expected, SurfaceLayout.compute(SurfaceLayout.SURFACE_BEST_FIT,
+                900, 1200, true, 800, 400, 800, 400, 1, 1));
+    }
+
+    @Test
+    public void sampleAspectRatio() {
+        assertEquals(new SurfaceLayout(1200, 600, 1200, 600), SurfaceLayout.compute(SurfaceLayout.SURFACE_BEST_FIT,
+                1200, 900, false, 400, 400, 400, 400, 2, 1));
+        assertEquals(new SurfaceLayout(800, 400, 800, 400), SurfaceLayout.compute(SurfaceLayout.SURFACE_ORIGINAL,
+                1200, 900, false, 400, 400, 400, 400, 2, 1));
+    }
+
+    @Test
+    public void frameCropsTheInvisiblePart() {
+        assertEquals(new SurfaceLayout(1248, 624, 1200, 600), SurfaceLayout.compute(SurfaceLayout.SURFACE_BEST_FIT,
+                1200, 900, false, 832, 416, 800, 400, 1, 1));
+    }
+
+    @Test
+    public void noSize() {
+        assertNull(SurfaceLayout.compute(SurfaceLayout.SURFACE_BEST_FIT, 0, 900, false, 800, 400, 800, 400, 1, 1));
+        assertNull(SurfaceLayout.compute(SurfaceLayout.SURFACE_BEST_FIT, 1200, 900, false, 0, 0, 0, 0, 1, 1));
+    }
+}